@@ -0,0 +1,384 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder.processor;
+
+import ru.noties.sqlbuilder.PrecompiledInput;
+import ru.noties.sqlbuilder.PrecompiledTemplate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles inputs of {@link PrecompiledTemplate} fields with the parser of the library (via {@link PrecompiledInput}) and generates
+ * `{ClassName}Templates` classes that restore templates without parsing (and typed builders for them)
+ */
+public class PrecompiledTemplateProcessor extends AbstractProcessor {
+
+    // names of methods of generated builders, arguments with these names receive no typed methods
+    private static final Set<String> RESERVED = new HashSet<>(Arrays.asList(
+            "create", "builder", "addRow", "clearBindings", "sqlStatement", "sqlBindArguments", "statement",
+            "equals", "hashCode", "toString", "getClass", "notify", "notifyAll", "wait", "clone", "finalize"
+    ));
+
+    // number of values in a line of generated arrays
+    private static final int VALUES_PER_LINE = 16;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(PrecompiledTemplate.class.getName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+
+        final Messager messager = processingEnv.getMessager();
+
+        // annotated fields grouped by their class (in order of appearance)
+        final Map<TypeElement, List<Template>> types = new LinkedHashMap<>();
+
+        for (Element element: roundEnv.getElementsAnnotatedWith(PrecompiledTemplate.class)) {
+
+            final VariableElement field = (VariableElement) element;
+            final Object value = field.getConstantValue();
+
+            if (!(value instanceof String)
+                    || !field.getModifiers().contains(Modifier.STATIC)) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "@PrecompiledTemplate must annotate a static " +
+                        "final String field with a constant value", field);
+                continue;
+            }
+
+            final String tag = field.getAnnotation(PrecompiledTemplate.class).locale();
+            if (tag.length() > 0
+                    && Locale.forLanguageTag(tag).getLanguage().isEmpty()) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "Invalid locale language tag: `" + tag + "`", field);
+                continue;
+            }
+
+            final PrecompiledInput data;
+            try {
+                data = PrecompiledInput.compile((String) value);
+            } catch (IllegalStateException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage(), field);
+                continue;
+            }
+
+            final TypeElement type = (TypeElement) field.getEnclosingElement();
+            List<Template> templates = types.get(type);
+            if (templates == null) {
+                templates = new ArrayList<>(3);
+                types.put(type, templates);
+            }
+            templates.add(new Template(field, (String) value, tag, data));
+        }
+
+        for (Map.Entry<TypeElement, List<Template>> entry: types.entrySet()) {
+            generate(entry.getKey(), entry.getValue());
+        }
+
+        return true;
+    }
+
+    private void generate(@Nonnull TypeElement type, @Nonnull List<Template> templates) {
+
+        final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String className = className(type) + "Templates";
+
+        final Set<String> builders = new HashSet<>();
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("// Generated by sqlbuilder-processor from `").append(type.getQualifiedName()).append("`, do not edit\n");
+        if (packageName.length() > 0) {
+            builder.append("package ").append(packageName).append(";\n\n");
+        }
+        builder.append("import ru.noties.sqlbuilder.SqlStatement;\n")
+                .append("import ru.noties.sqlbuilder.SqlStatementBuilder;\n")
+                .append("import ru.noties.sqlbuilder.SqlTemplate;\n\n")
+                .append("public final class ").append(className).append(" {\n");
+
+        for (Template template: templates) {
+
+            final String field = template.field.getSimpleName().toString();
+
+            builder.append("\n    public static final SqlTemplate ").append(field).append(" = SqlTemplate.precompiled(\n")
+                    .append("            ").append(literal(template.input)).append(",\n")
+                    .append("            ").append(template.locale.length() == 0
+                            ? "null"
+                            : "java.util.Locale.forLanguageTag(" + literal(template.locale) + ")").append(",\n")
+                    .append("            new String[]{");
+            final String[] strings = template.data.strings();
+            for (int i = 0; i < strings.length; i++) {
+                builder.append(i == 0 ? "\n                    " : ",\n                    ").append(literal(strings[i]));
+            }
+            builder.append("\n            },\n")
+                    .append("            new int[]{");
+            final int[] table = template.data.table();
+            for (int i = 0; i < table.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(i % VALUES_PER_LINE == 0 ? "\n                    " : " ").append(table[i]);
+            }
+            builder.append("\n            });\n");
+
+            final String name = typeName(field);
+            if (name.equals(className)
+                    || !builders.add(name)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Name of generated builder `" +
+                        name + "` is already used, rename the field", template.field);
+                continue;
+            }
+            builder(builder, field, name, template.data);
+        }
+
+        builder.append("\n    private ").append(className).append("() {\n    }\n}\n");
+
+        final String qualifiedName = packageName.length() > 0
+                ? packageName + "." + className
+                : className;
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(builder.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write `" + qualifiedName +
+                    "`: " + e.getMessage(), type);
+        }
+    }
+
+    // typed builder: slot constants and bind methods for each argument
+    private static void builder(
+            @Nonnull StringBuilder builder,
+            @Nonnull String field,
+            @Nonnull String name,
+            @Nonnull PrecompiledInput data) {
+
+        builder.append("\n    public static final class ").append(name).append(" {\n\n");
+
+        final Set<String> constants = new HashSet<>();
+        final String[] slots = new String[data.slotCount()];
+
+        for (int i = 0; i < slots.length; i++) {
+            final String constant = "SLOT_" + constantName(data.slotName(i));
+            if (constants.add(constant)) {
+                slots[i] = constant;
+                builder.append("        public static final int ").append(constant).append(" = ").append(i).append(";\n");
+            }
+        }
+
+        builder.append("\n        public static ").append(name).append(" create() {\n")
+                .append("            return new ").append(name).append('(').append(field).append(".newBuilder());\n")
+                .append("        }\n\n")
+                .append("        private final SqlStatementBuilder builder;\n\n")
+                .append("        private ").append(name).append("(SqlStatementBuilder builder) {\n")
+                .append("            this.builder = builder;\n")
+                .append("        }\n");
+
+        for (int i = 0; i < slots.length; i++) {
+            final String argument = data.slotName(i);
+            if (slots[i] == null
+                    || !SourceVersion.isName(argument)
+                    || RESERVED.contains(argument)) {
+                // bound via `builder()` with a slot or a name
+                continue;
+            }
+            method(builder, name, argument, "Object", "bind", slots[i]);
+            method(builder, name, argument, "long", "bindLong", slots[i]);
+            method(builder, name, argument, "double", "bindDouble", slots[i]);
+            method(builder, name, argument, "boolean", "bindBoolean", slots[i]);
+        }
+
+        if (data.hasGroup()) {
+            builder.append("\n        public ").append(name).append(" addRow() {\n")
+                    .append("            builder.addRow();\n")
+                    .append("            return this;\n")
+                    .append("        }\n");
+        }
+
+        builder.append("\n        public ").append(name).append(" clearBindings() {\n")
+                .append("            builder.clearBindings();\n")
+                .append("            return this;\n")
+                .append("        }\n\n")
+                .append("        public SqlStatementBuilder builder() {\n")
+                .append("            return builder;\n")
+                .append("        }\n\n")
+                .append("        public String sqlStatement() {\n")
+                .append("            return builder.sqlStatement();\n")
+                .append("        }\n\n")
+                .append("        public Object[] sqlBindArguments() {\n")
+                .append("            return builder.sqlBindArguments();\n")
+                .append("        }\n\n")
+                .append("        public SqlStatement statement() {\n")
+                .append("            return builder.statement();\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    private static void method(
+            @Nonnull StringBuilder builder,
+            @Nonnull String type,
+            @Nonnull String argument,
+            @Nonnull String parameter,
+            @Nonnull String bind,
+            @Nonnull String slot) {
+        builder.append("\n        public ").append(type).append(' ').append(argument)
+                .append('(').append(parameter).append(" value) {\n")
+                .append("            builder.").append(bind).append('(').append(slot).append(", value);\n")
+                .append("            return this;\n")
+                .append("        }\n");
+    }
+
+    // `Outer.Inner` -> `Outer_Inner`
+    @Nonnull
+    private static String className(@Nonnull TypeElement type) {
+        final Element enclosing = type.getEnclosingElement();
+        if (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            return className((TypeElement) enclosing) + "_" + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    // `FIND_USER` or `findUser` -> `FindUser`
+    @Nonnull
+    static String typeName(@Nonnull String field) {
+        final boolean constant = field.equals(field.toUpperCase(Locale.US));
+        final StringBuilder builder = new StringBuilder(field.length());
+        boolean upper = true;
+        for (int i = 0, length = field.length(); i < length; i++) {
+            final char c = field.charAt(i);
+            if (c == '_') {
+                upper = true;
+            } else if (upper) {
+                builder.append(Character.toUpperCase(c));
+                upper = false;
+            } else {
+                builder.append(constant ? Character.toLowerCase(c) : c);
+            }
+        }
+        return builder.length() == 0
+                ? "Template"
+                : builder.toString();
+    }
+
+    // `userId` -> `USER_ID`, characters that cannot be used in a name are replaced with `_`
+    @Nonnull
+    static String constantName(@Nonnull String argument) {
+        final StringBuilder builder = new StringBuilder(argument.length() + 4);
+        char previous = 0;
+        for (int i = 0, length = argument.length(); i < length; i++) {
+            final char c = argument.charAt(i);
+            if (Character.isUpperCase(c) && Character.isLowerCase(previous)) {
+                builder.append('_');
+            }
+            builder.append(Character.isJavaIdentifierPart(c)
+                    ? Character.toUpperCase(c)
+                    : '_');
+            previous = c;
+        }
+        return builder.toString();
+    }
+
+    // Java string literal, everything outside of printable ascii is escaped
+    @Nonnull
+    static String literal(String value) {
+
+        if (value == null) {
+            return "null";
+        }
+
+        final StringBuilder builder = new StringBuilder(value.length() + 2);
+        builder.append('"');
+
+        for (int i = 0, length = value.length(); i < length; i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        // octal, as an unicode escape of a line break would end the line of generated source
+                        builder.append(String.format(Locale.US, "\\%03o", (int) c));
+                    } else if (c > 0x7e) {
+                        builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+
+        return builder.append('"').toString();
+    }
+
+    private static class Template {
+
+        final VariableElement field;
+        final String input;
+        final String locale;
+        final PrecompiledInput data;
+
+        Template(
+                @Nonnull VariableElement field,
+                @Nonnull String input,
+                @Nonnull String locale,
+                @Nonnull PrecompiledInput data) {
+            this.field = field;
+            this.input = input;
+            this.locale = locale;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ru.noties.sqlbuilder.SqlTemplate;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class PrecompiledTemplateProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void generate() throws Exception {
+
+        final File output = folder.newFolder();
+
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile(output, "" +
+                "package test;\n" +
+                "import ru.noties.sqlbuilder.PrecompiledTemplate;\n" +
+                "public class Queries {\n" +
+                "    @PrecompiledTemplate\n" +
+                "    static final String FIND_USER = \"select * from ${table} where id = ?{userId} and name = '\\u00e9\\n'\";\n" +
+                "    @PrecompiledTemplate(locale = \"de-DE\")\n" +
+                "    public static final String insertValues = \"insert into t(a, b) values *{(?{a}, ?{b})} -- ${%.2f c}\";\n" +
+                "}\n");
+
+        assertTrue(errors.toString(), errors.isEmpty());
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{output.toURI().toURL()}, getClass().getClassLoader())) {
+
+            final Class<?> type = loader.loadClass("test.QueriesTemplates");
+
+            final SqlTemplate findUser = (SqlTemplate) type.getField("FIND_USER").get(null);
+            assertEquals("select * from ${table} where id = ?{userId} and name = '\u00e9\n'", findUser.input());
+            assertEquals(Locale.US, findUser.locale());
+
+            final SqlTemplate created = SqlTemplate.create(findUser.input());
+            assertEquals(created.slot("table"), findUser.slot("table"));
+            assertEquals(created.slot("userId"), findUser.slot("userId"));
+
+            final Class<?> findUserBuilder = loader.loadClass("test.QueriesTemplates$FindUser");
+            assertEquals(findUser.slot("userId"), findUserBuilder.getField("SLOT_USER_ID").getInt(null));
+
+            Object builder = findUserBuilder.getMethod("create").invoke(null);
+            builder = findUserBuilder.getMethod("table", Object.class).invoke(builder, "users");
+            builder = findUserBuilder.getMethod("userId", long.class).invoke(builder, 33L);
+            assertEquals(
+                    "select * from users where id = ? and name = '\u00e9\n'",
+                    findUserBuilder.getMethod("sqlStatement").invoke(builder));
+            assertArrayEquals(
+                    new Object[]{33L},
+                    (Object[]) findUserBuilder.getMethod("sqlBindArguments").invoke(builder));
+
+            final SqlTemplate insertValues = (SqlTemplate) type.getField("insertValues").get(null);
+            assertEquals(Locale.GERMANY, insertValues.locale());
+
+            final Class<?> insertBuilder = loader.loadClass("test.QueriesTemplates$InsertValues");
+            final Method a = insertBuilder.getMethod("a", long.class);
+            final Method b = insertBuilder.getMethod("b", Object.class);
+            final Method addRow = insertBuilder.getMethod("addRow");
+
+            builder = insertBuilder.getMethod("create").invoke(null);
+            insertBuilder.getMethod("c", double.class).invoke(builder, 1.5D);
+            addRow.invoke(b.invoke(a.invoke(builder, 1L), "one"));
+            addRow.invoke(b.invoke(a.invoke(builder, 2L), "two"));
+            assertEquals(
+                    "insert into t(a, b) values (?, ?), (?, ?) -- 1,50",
+                    insertBuilder.getMethod("sqlStatement").invoke(builder));
+            assertArrayEquals(
+                    new Object[]{1L, "one", 2L, "two"},
+                    (Object[]) insertBuilder.getMethod("sqlBindArguments").invoke(builder));
+        }
+    }
+
+    @Test
+    public void errors() throws Exception {
+
+        final List<Diagnostic<? extends JavaFileObject>> errors = compile(folder.newFolder(), "" +
+                "package test;\n" +
+                "import ru.noties.sqlbuilder.PrecompiledTemplate;\n" +
+                "public class Queries {\n" +
+                "    @PrecompiledTemplate\n" +
+                "    static final String NOT_CLOSED = \"select * from ${table\";\n" +
+                "    @PrecompiledTemplate\n" +
+                "    static final String EMPTY_NAME = \"select * from t where id = ?{}\";\n" +
+                "    @PrecompiledTemplate\n" +
+                "    final String notStatic = \"select 1\";\n" +
+                "    @PrecompiledTemplate\n" +
+                "    static final String NOT_CONSTANT = String.valueOf(1);\n" +
+                "}\n");
+
+        assertEquals(errors.toString(), 4, errors.size());
+
+        final List<Long> lines = Arrays.asList(5L, 7L, 9L, 11L);
+        for (Diagnostic<? extends JavaFileObject> error: errors) {
+            assertTrue(error.toString(), lines.contains(error.getLineNumber()));
+        }
+    }
+
+    @Test
+    public void names() {
+        assertEquals("FindUser", PrecompiledTemplateProcessor.typeName("FIND_USER"));
+        assertEquals("FindUser", PrecompiledTemplateProcessor.typeName("findUser"));
+        assertEquals("USER_ID", PrecompiledTemplateProcessor.constantName("userId"));
+        assertEquals("USER_ID", PrecompiledTemplateProcessor.constantName("user_id"));
+        assertEquals("A_B", PrecompiledTemplateProcessor.constantName("a-b"));
+        assertEquals("\"a\\\"\\\\\\n\\001\\u00e9\"", PrecompiledTemplateProcessor.literal("a\"\\\n\u0001\u00e9"));
+        assertEquals("null", PrecompiledTemplateProcessor.literal(null));
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compile(File output, final String source) {
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/Queries.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final JavaCompiler.CompilationTask task = compiler.getTask(
+                null,
+                null,
+                diagnostics,
+                Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", output.getAbsolutePath()),
+                null,
+                Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new PrecompiledTemplateProcessor()));
+        task.call();
+
+        final List<Diagnostic<? extends JavaFileObject>> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic: diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic);
+            }
+        }
+        return errors;
+    }
+}
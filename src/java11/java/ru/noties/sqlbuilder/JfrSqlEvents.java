@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+// created by Java 11+ versions of Platform
+@SuppressWarnings("unused")
+class JfrSqlEvents extends SqlEvents {
+
+    @Nullable
+    @Override
+    Object beginCompile() {
+        final CompileEvent event = new CompileEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void compiled(@Nullable Object event, @Nonnull String input, @Nullable InputData data) {
+        if (event == null) {
+            return;
+        }
+        final CompileEvent compile = (CompileEvent) event;
+        compile.end();
+        if (compile.shouldCommit()) {
+            compile.templateHash = input.hashCode();
+            compile.inputLength = input.length();
+            compile.failed = data == null;
+            if (data != null) {
+                compile.formatSlots = data.formatArgsLength();
+                compile.bindSlots = data.bindArgsLength();
+            }
+            compile.commit();
+        }
+    }
+
+    @Nullable
+    @Override
+    Object beginRender() {
+        final RenderEvent event = new RenderEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    void rendered(@Nullable Object event, @Nonnull String input, @Nonnull InputData data, int length) {
+        if (event == null) {
+            return;
+        }
+        final RenderEvent render = (RenderEvent) event;
+        render.end();
+        if (render.shouldCommit()) {
+            render.templateHash = input.hashCode();
+            render.inputLength = input.length();
+            render.formatSlots = data.formatArgsLength();
+            render.bindSlots = data.bindArgsLength();
+            render.statementLength = length;
+            render.commit();
+        }
+    }
+
+    @Override
+    void validationFailed(@Nonnull String input, @Nonnull InputData data, @Nonnull String message) {
+        final ValidationFailedEvent event = new ValidationFailedEvent();
+        if (event.shouldCommit()) {
+            event.templateHash = input.hashCode();
+            event.inputLength = input.length();
+            event.formatSlots = data.formatArgsLength();
+            event.bindSlots = data.bindArgsLength();
+            event.message = message;
+            event.commit();
+        }
+    }
+
+    @Name("ru.noties.sqlbuilder.Compile")
+    @Label("SQL Template Compile")
+    @Description("Parsing of a template input")
+    @Category("SqlBuilder")
+    @StackTrace(false)
+    static class CompileEvent extends Event {
+
+        @Label("Template Hash")
+        int templateHash;
+
+        @Label("Input Length")
+        int inputLength;
+
+        @Label("Format Slots")
+        int formatSlots;
+
+        @Label("Bind Slots")
+        int bindSlots;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("ru.noties.sqlbuilder.Render")
+    @Label("SQL Statement Render")
+    @Description("Rendering of a SQL statement with format arguments")
+    @Category("SqlBuilder")
+    @StackTrace(false)
+    static class RenderEvent extends Event {
+
+        @Label("Template Hash")
+        int templateHash;
+
+        @Label("Input Length")
+        int inputLength;
+
+        @Label("Format Slots")
+        int formatSlots;
+
+        @Label("Bind Slots")
+        int bindSlots;
+
+        @Label("Statement Length")
+        int statementLength;
+    }
+
+    @Name("ru.noties.sqlbuilder.ValidationFailed")
+    @Label("SQL Statement Validation Failed")
+    @Description("Named arguments of a statement are not bound")
+    @Category("SqlBuilder")
+    static class ValidationFailedEvent extends Event {
+
+        @Label("Template Hash")
+        int templateHash;
+
+        @Label("Input Length")
+        int inputLength;
+
+        @Label("Format Slots")
+        int formatSlots;
+
+        @Label("Bind Slots")
+        int bindSlots;
+
+        @Label("Message")
+        String message;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JfrSqlEventsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void events() throws Exception {
+
+        assertNotNull(SqlEvents.INSTANCE);
+
+        final String input = "select * from ${table} where id = ?{id}";
+
+        final Path path = folder.newFile("recording.jfr").toPath();
+
+        try (Recording recording = new Recording()) {
+
+            recording.enable("ru.noties.sqlbuilder.Compile").withThreshold(Duration.ZERO);
+            recording.enable("ru.noties.sqlbuilder.Render").withThreshold(Duration.ZERO);
+            recording.enable("ru.noties.sqlbuilder.ValidationFailed");
+            recording.start();
+
+            final SqlTemplate template = SqlTemplate.create(input);
+            template.newBuilder().bind("table", "users").bind("id", 1).sqlStatement();
+
+            try {
+                template.newBuilder().bind("table", "users").sqlStatement();
+                //noinspection ConstantConditions
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+
+            try {
+                SqlTemplate.create("select * from ${table");
+                //noinspection ConstantConditions
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+
+            recording.stop();
+            recording.dump(path);
+        }
+
+        final List<RecordedEvent> compile = new ArrayList<>();
+        final List<RecordedEvent> render = new ArrayList<>();
+        final List<RecordedEvent> failed = new ArrayList<>();
+
+        for (RecordedEvent event: RecordingFile.readAllEvents(path)) {
+            switch (event.getEventType().getName()) {
+                case "ru.noties.sqlbuilder.Compile":
+                    compile.add(event);
+                    break;
+                case "ru.noties.sqlbuilder.Render":
+                    render.add(event);
+                    break;
+                case "ru.noties.sqlbuilder.ValidationFailed":
+                    failed.add(event);
+                    break;
+            }
+        }
+
+        assertEquals(2, compile.size());
+        assertEquals(input.hashCode(), compile.get(0).getInt("templateHash"));
+        assertEquals(input.length(), compile.get(0).getInt("inputLength"));
+        assertEquals(1, compile.get(0).getInt("formatSlots"));
+        assertEquals(1, compile.get(0).getInt("bindSlots"));
+        assertFalse(compile.get(0).getBoolean("failed"));
+        assertTrue(compile.get(1).getBoolean("failed"));
+
+        assertEquals(1, render.size());
+        assertEquals("select * from users where id = ?".length(), render.get(0).getInt("statementLength"));
+
+        assertEquals(1, failed.size());
+        assertEquals(input.hashCode(), failed.get(0).getInt("templateHash"));
+        assertTrue(failed.get(0).getString("message").contains("id"));
+    }
+}
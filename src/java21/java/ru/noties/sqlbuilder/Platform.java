@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nullable;
+
+// Java 21 version (see `src/main` version)
+abstract class Platform {
+
+    static final int VERSION = 21;
+
+    static int threadHash() {
+        return (int) Thread.currentThread().threadId();
+    }
+
+    // virtual threads are not pooled, so values kept for them are never reused (and
+    // keeping them for millions of threads only wastes memory)
+    static boolean reusesThreadLocals() {
+        return !Thread.currentThread().isVirtual();
+    }
+
+    @Nullable
+    static SqlEvents events() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return new JfrSqlEvents();
+        } catch (ClassNotFoundException | LinkageError e) {
+            // runtime without `jdk.jfr` module
+            return null;
+        }
+    }
+
+    private Platform() {
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PlatformTest {
+
+    @Test
+    public void version() {
+        assertEquals(21, Platform.VERSION);
+        assertEquals(Thread.currentThread().threadId(), Platform.threadHash());
+        assertNotNull(SqlEvents.INSTANCE);
+    }
+
+    @Test
+    public void platformThreadReusesBuffers() {
+        final StringBuilder builder = Buffers.acquire();
+        Buffers.release(builder);
+        assertSame(builder, Buffers.acquire());
+    }
+
+    @Test
+    public void virtualThreadDoesNotReuseBuffers() throws InterruptedException {
+        final AtomicBoolean reused = new AtomicBoolean(true);
+        Thread.ofVirtual().start(new Runnable() {
+            @Override
+            public void run() {
+                assertFalse(Platform.reusesThreadLocals());
+                final StringBuilder builder = Buffers.acquire();
+                Buffers.release(builder);
+                reused.set(builder == Buffers.acquire());
+            }
+        }).join();
+        assertFalse(reused.get());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateCacheStressTest {
+
+    private static final int THREADS = 5_000;
+    private static final int LOOKUPS = 200;
+
+    @Test
+    public void sameInstanceForKey() throws Exception {
+
+        // no evictions, so each key must resolve to a single instance across all threads
+        final SqlTemplateCache cache = SqlTemplateCache.create(1024);
+        final ConcurrentMap<String, SqlTemplate> seen = new ConcurrentHashMap<>();
+
+        run(new Lookup() {
+            @Override
+            public void lookup(int thread, int index) {
+                final String input = "select * from ${table} where id = " + ((thread + index) % 512);
+                final SqlTemplate template = cache.template(input, null);
+                assertEquals(input, template.input());
+                final SqlTemplate previous = seen.putIfAbsent(input, template);
+                if (previous != null) {
+                    assertSame(previous, template);
+                }
+            }
+        });
+
+        assertEquals(512, cache.size());
+        assertEquals(0, cache.evictionCount());
+        assertEquals((long) THREADS * LOOKUPS, cache.hitCount() + cache.missCount());
+        assertTrue(cache.missCount() >= 512);
+    }
+
+    @Test
+    public void mixedHitsAndMisses() throws Exception {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(256);
+
+        run(new Lookup() {
+            @Override
+            public void lookup(int thread, int index) {
+                final String input;
+                if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                    // miss, evicts
+                    input = "select ${column} from t_" + thread + "_" + index;
+                } else {
+                    input = "select ${column} from hot_" + (index % 64);
+                }
+                final SqlTemplate template = cache.template(input, null);
+                assertEquals(input, template.input());
+                assertEquals(
+                        input.replace("${column}", "id"),
+                        template.newBuilder().bind("column", "id").sqlStatement());
+            }
+        });
+
+        // after all threads are done no eviction is pending
+        assertTrue(cache.size() <= 256);
+        assertEquals((long) THREADS * LOOKUPS, cache.hitCount() + cache.missCount());
+        // a miss that lost a race for the same key is neither stored nor evicted
+        assertTrue(cache.evictionCount() > 0);
+        assertTrue(cache.evictionCount() <= cache.missCount() - cache.size());
+        assertTrue(cache.hitCount() > 0);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private interface Lookup {
+        void lookup(int thread, int index);
+    }
+
+    private static void run(final Lookup lookup) throws Exception {
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> futures = new ArrayList<>(THREADS);
+
+        try (ExecutorService service = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < THREADS; i++) {
+                final int thread = i;
+                futures.add(service.submit(() -> {
+                    assertTrue(Thread.currentThread().isVirtual());
+                    start.await();
+                    for (int index = 0; index < LOOKUPS; index++) {
+                        lookup.lookup(thread, index);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future: futures) {
+                // rethrows assertion errors of virtual threads
+                future.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// binding and rendering of a statement with format-only, bind-only and mixed placeholders
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindBenchmark {
+
+    @Param({Inputs.FORMAT, Inputs.BIND, Inputs.MIXED})
+    public String kind;
+
+    @Param({"4", "32"})
+    public int arguments;
+
+    private String input;
+    private SqlTemplate template;
+
+    private String[] names;
+    private int[] slots;
+    private Object[] values;
+
+    @Setup
+    public void setUp() {
+        input = Inputs.input(kind, arguments);
+        template = SqlTemplate.create(input);
+        names = new String[arguments];
+        slots = new int[arguments];
+        values = new Object[arguments];
+        for (int i = 0; i < arguments; i++) {
+            names[i] = Inputs.name(i);
+            slots[i] = template.slot(names[i]);
+            values[i] = Inputs.value(i);
+        }
+    }
+
+    // parses input each time
+    @Benchmark
+    public void create(Blackhole blackhole) {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create(input);
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(names[i], values[i]);
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+
+    @Benchmark
+    public void templateByName(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.newBuilder();
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(names[i], values[i]);
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+
+    @Benchmark
+    public void templateBySlot(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.newBuilder();
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(slots[i], values[i]);
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+
+    @Benchmark
+    public void templatePooled(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.acquire();
+        try {
+            for (int i = 0; i < arguments; i++) {
+                builder.bind(slots[i], values[i]);
+            }
+            blackhole.consume(builder.statement());
+        } finally {
+            template.release(builder);
+        }
+    }
+
+    // long values are boxed on each bind (outside of Long cache range)
+    @Benchmark
+    public void templateBySlotBoxed(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.newBuilder();
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(slots[i], (Object) (1000L + i));
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+
+    @Benchmark
+    public void templateBySlotPrimitive(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.newBuilder();
+        for (int i = 0; i < arguments; i++) {
+            builder.bindLong(slots[i], 1000L + i);
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+
+    @Benchmark
+    public void concurrent(Blackhole blackhole) {
+        final SqlStatementBuilder builder = template.newConcurrentBuilder();
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(slots[i], values[i]);
+        }
+        blackhole.consume(builder.statement());
+    }
+}
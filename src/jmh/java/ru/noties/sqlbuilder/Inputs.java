@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+// generates inputs for benchmarks
+abstract class Inputs {
+
+    static final String FORMAT = "format";
+    static final String BIND = "bind";
+    static final String MIXED = "mixed";
+
+    // `select ... from table where c0 = ${a0} and c1 = ?{a1} and ...` with `arguments` distinct
+    // named arguments (each used twice)
+    static String input(String kind, int arguments) {
+        final StringBuilder builder = new StringBuilder("select id, name, created_at, updated_at from my_table where ");
+        for (int i = 0; i < arguments; i++) {
+            if (i > 0) {
+                builder.append(" and ");
+            }
+            final String placeholder = placeholder(kind, i);
+            builder.append("(column_").append(i).append(" = ")
+                    .append(placeholder)
+                    .append(" or parent_column_").append(i).append(" = ")
+                    .append(placeholder)
+                    .append(')');
+        }
+        return builder.append(" order by id asc").toString();
+    }
+
+    static String name(int i) {
+        return "a" + i;
+    }
+
+    static Object value(int i) {
+        return i % 2 == 0
+                ? (Object) ("value_" + i)
+                : (Object) (long) i;
+    }
+
+    private static String placeholder(String kind, int i) {
+        final boolean format;
+        switch (kind) {
+            case FORMAT:
+                format = true;
+                break;
+            case BIND:
+                format = false;
+                break;
+            case MIXED:
+                format = i % 2 == 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+        return (format ? "${" : "?{") + name(i) + "}";
+    }
+
+    private Inputs() {}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// `clearBindings` -> `bind` -> `sqlStatement`/`sqlBindArguments` cycle on the same builder
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RebindBenchmark {
+
+    @Param({Inputs.FORMAT, Inputs.BIND, Inputs.MIXED})
+    public String kind;
+
+    @Param({"4"})
+    public int arguments;
+
+    private SqlStatementBuilder builder;
+    private String[] names;
+    private Object[][] rows;
+    private int row;
+
+    @Setup
+    public void setUp() {
+        builder = SqlStatementBuilder.create(Inputs.input(kind, arguments));
+        names = new String[arguments];
+        for (int i = 0; i < arguments; i++) {
+            names[i] = Inputs.name(i);
+        }
+        // a number of rows, so values differ between iterations
+        rows = new Object[16][arguments];
+        for (int r = 0; r < rows.length; r++) {
+            for (int i = 0; i < arguments; i++) {
+                rows[r][i] = Inputs.value(r * arguments + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public void rebind(Blackhole blackhole) {
+        final Object[] values = rows[row++ & (rows.length - 1)];
+        builder.clearBindings();
+        for (int i = 0; i < arguments; i++) {
+            builder.bind(names[i], values[i]);
+        }
+        blackhole.consume(builder.sqlStatement());
+        blackhole.consume(builder.sqlBindArguments());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// per-thread reusable buffers for rendering into targets other than StringBuilder (not kept for
+// virtual threads, see Platform)
+abstract class Buffers {
+
+    // bigger builders are not kept, so a single huge statement does not retain memory
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+
+    private static final ThreadLocal<StringBuilder> BUILDER = new ThreadLocal<>();
+
+    private static final ThreadLocal<CharsetEncoder> ENCODER = new ThreadLocal<CharsetEncoder>() {
+        @Override
+        protected CharsetEncoder initialValue() {
+            return newEncoder();
+        }
+    };
+
+    @Nonnull
+    private static CharsetEncoder newEncoder() {
+        // the same as `String#getBytes`
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // builder is taken from the pool (so nested usage on the same thread creates a new one)
+    @Nonnull
+    static StringBuilder acquire() {
+        if (!Platform.reusesThreadLocals()) {
+            return new StringBuilder(256);
+        }
+        final StringBuilder builder = BUILDER.get();
+        if (builder == null) {
+            return new StringBuilder(256);
+        }
+        BUILDER.set(null);
+        return builder;
+    }
+
+    static void release(@Nonnull StringBuilder builder) {
+        if (builder.capacity() <= MAX_RETAINED_CAPACITY
+                && Platform.reusesThreadLocals()) {
+            builder.setLength(0);
+            BUILDER.set(builder);
+        }
+    }
+
+    // `CharBuffer#append` creates a String of appended CharSequence, so chars are copied directly
+    static void put(@Nonnull CharSequence chars, @Nonnull CharBuffer buffer) throws BufferOverflowException {
+
+        final int length = chars.length();
+        if (buffer.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+
+        if (buffer.hasArray() && chars instanceof StringBuilder) {
+            final int position = buffer.position();
+            ((StringBuilder) chars).getChars(0, length, buffer.array(), buffer.arrayOffset() + position);
+            buffer.position(position + length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer.put(chars.charAt(i));
+            }
+        }
+    }
+
+    // encodes chars as UTF-8, if buffer has not enough space its position is not changed
+    static void encode(@Nonnull CharSequence chars, @Nonnull ByteBuffer buffer) throws BufferOverflowException {
+
+        final CharsetEncoder encoder;
+        if (Platform.reusesThreadLocals()) {
+            encoder = ENCODER.get();
+            encoder.reset();
+        } else {
+            encoder = newEncoder();
+        }
+
+        final int position = buffer.position();
+
+        CoderResult result = encoder.encode(CharBuffer.wrap(chars), buffer, true);
+        if (!result.isOverflow()) {
+            result = encoder.flush(buffer);
+        }
+
+        if (result.isOverflow()) {
+            buffer.position(position);
+            throw new BufferOverflowException();
+        }
+    }
+
+    private Buffers() {
+    }
+}
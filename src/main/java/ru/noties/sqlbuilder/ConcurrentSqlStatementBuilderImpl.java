@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+// all bindings are held in an immutable snapshot, each `bind` call creates a new one and
+// swaps it with CAS. Statement is built lazily for a snapshot and cached in it
+class ConcurrentSqlStatementBuilderImpl extends SqlStatementBuilder {
+
+    private final SqlTemplateImpl mTemplate;
+    private final AtomicReference<Bindings> mBindings;
+
+    ConcurrentSqlStatementBuilderImpl(@Nonnull SqlTemplateImpl template) {
+        mTemplate = template;
+        mBindings = new AtomicReference<>(Bindings.empty());
+    }
+
+    @Override
+    public SqlStatementBuilder bind(@Nonnull String name, @Nullable Object value) {
+
+        final InputData data = mTemplate.inputDataOrNull();
+        if (data == null) {
+            // input is malformed, an exception will be thrown when statement is requested
+            return this;
+        }
+
+        final int slot = data.argumentId(name);
+
+        if (slot != -1 && SqlStatementBuilderImpl.isGroupArg(data, slot)) {
+            SqlStatementBuilderImpl.checkNotExpandable(mTemplate, data, slot, value, "an argument of repeated group");
+        }
+
+        Bindings current;
+        do {
+            current = mBindings.get();
+        } while (!mBindings.compareAndSet(current, slot == -1
+                ? current.notPresent(name)
+                : current.bind(data.argsLength(), slot, value)));
+
+        final SqlTemplateMetricsImpl metrics = mTemplate.metrics();
+        if (metrics != null
+                && slot != -1) {
+            metrics.increment(SqlTemplateMetrics.Counter.BINDS);
+        }
+
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bind(int slot, @Nullable Object value) {
+
+        final InputData data = mTemplate.inputData();
+        if (slot < 0 || slot >= data.argsLength()) {
+            throw new IllegalArgumentException("Invalid slot: `" + slot + "`, input has `" +
+                    data.argsLength() + "` named arguments. Input: `" + mTemplate.input() + "`");
+        }
+
+        if (SqlStatementBuilderImpl.isGroupArg(data, slot)) {
+            SqlStatementBuilderImpl.checkNotExpandable(mTemplate, data, slot, value, "an argument of repeated group");
+        }
+
+        Bindings current;
+        do {
+            current = mBindings.get();
+        } while (!mBindings.compareAndSet(current, current.bind(data.argsLength(), slot, value)));
+
+        final SqlTemplateMetricsImpl metrics = mTemplate.metrics();
+        if (metrics != null) {
+            metrics.increment(SqlTemplateMetrics.Counter.BINDS);
+        }
+
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder addRow() throws IllegalStateException {
+
+        final InputData data = mTemplate.inputData();
+
+        Bindings current;
+        do {
+            current = mBindings.get();
+        } while (!mBindings.compareAndSet(current, current.addRow(mTemplate, data)));
+
+        return this;
+    }
+
+    @Override
+    public void clearBindings() {
+        mBindings.set(Bindings.empty());
+    }
+
+    @Override
+    public String sqlStatement() throws IllegalStateException {
+        return statement().sqlStatement();
+    }
+
+    @Override
+    public Object[] sqlBindArguments() throws IllegalStateException {
+        return statement().sqlBindArguments();
+    }
+
+    @Nonnull
+    @Override
+    public SqlStatement statement() throws IllegalStateException {
+        return mBindings.get().statement(mTemplate);
+    }
+
+    @Nonnull
+    @Override
+    public SqlBatch batch() throws IllegalStateException {
+        final Bindings bindings = mBindings.get();
+        return SqlStatementBuilderImpl.batch(mTemplate, bindings.values, null, bindings.bound, bindings.notPresent, bindings.rows);
+    }
+
+    private static final class Bindings {
+
+        // not shared between builders, as each snapshot caches a statement for its template
+        @Nonnull
+        static Bindings empty() {
+            return new Bindings(null, null, 0, null, null);
+        }
+
+        final Object[] values;
+        final boolean[] bound;
+        final int boundLength;
+        final Set<String> notPresent;
+        final List<Object[]> rows;
+
+        // is built lazily, if multiple threads race here statement will be built more than once,
+        // but as SqlStatement is immutable it doesn't matter which one is cached
+        private volatile SqlStatement statement;
+
+        Bindings(
+                @Nullable Object[] values,
+                @Nullable boolean[] bound,
+                int boundLength,
+                @Nullable Set<String> notPresent,
+                @Nullable List<Object[]> rows) {
+            this.values = values;
+            this.bound = bound;
+            this.boundLength = boundLength;
+            this.notPresent = notPresent;
+            this.rows = rows;
+        }
+
+        @Nonnull
+        Bindings bind(int argsLength, int slot, @Nullable Object value) {
+
+            final Object[] values = this.values == null
+                    ? new Object[argsLength]
+                    : this.values.clone();
+            values[slot] = value;
+
+            final boolean[] bound;
+            final int boundLength;
+            if (this.bound != null && this.bound[slot]) {
+                // can share, as it's not modified
+                bound = this.bound;
+                boundLength = this.boundLength;
+            } else {
+                bound = this.bound == null
+                        ? new boolean[argsLength]
+                        : this.bound.clone();
+                bound[slot] = true;
+                boundLength = this.boundLength + 1;
+            }
+
+            return new Bindings(values, bound, boundLength, notPresent, rows);
+        }
+
+        // adds a row and un-binds group arguments
+        @Nonnull
+        Bindings addRow(@Nonnull SqlTemplateImpl template, @Nonnull InputData data) {
+
+            final Object[] row = SqlStatementBuilderImpl.row(template, values, null, bound);
+
+            final List<Object[]> rows = this.rows == null
+                    ? new ArrayList<Object[]>(3)
+                    : new ArrayList<>(this.rows);
+            rows.add(row);
+
+            //noinspection ConstantConditions
+            final boolean[] bound = this.bound.clone();
+            for (int slot = data.groupArgsStart(), end = data.groupArgsEnd(); slot < end; slot++) {
+                bound[slot] = false;
+            }
+
+            final int boundLength = this.boundLength - (data.groupArgsEnd() - data.groupArgsStart());
+
+            return new Bindings(values, bound, boundLength, notPresent, Collections.unmodifiableList(rows));
+        }
+
+        @Nonnull
+        Bindings notPresent(@Nonnull String name) {
+            final Set<String> set = notPresent == null
+                    ? new LinkedHashSet<String>(3)
+                    : new LinkedHashSet<>(notPresent);
+            set.add(name);
+            return new Bindings(values, bound, boundLength, Collections.unmodifiableSet(set), rows);
+        }
+
+        @Nonnull
+        SqlStatement statement(@Nonnull SqlTemplateImpl template) {
+            SqlStatement out = statement;
+            if (out == null) {
+                out = SqlStatementBuilderImpl.build(template, values, null, bound, boundLength, notPresent, rows);
+                statement = out;
+            }
+            return out;
+        }
+    }
+}
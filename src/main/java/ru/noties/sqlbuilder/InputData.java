@@ -17,13 +17,23 @@
 package ru.noties.sqlbuilder;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.Locale;
 
 abstract class InputData {
 
+    // kinds of placeholders in compiled input
+    static final byte KIND_BIND = 0;      // `?{name}`
+    static final byte KIND_STRING = 1;    // `${name}` or `${%s name}`
+    static final byte KIND_DECIMAL = 2;   // `${%d name}`
+    static final byte KIND_FORMAT = 3;    // `${modifier name}` that requires Formatter
+    static final byte KIND_GROUP = 4;     // `*{(?{a}, ?{b})}` repeated group
+
     // might throw IllegalStateException if cannot parse the input
     // 1. nested placeholders, aka `${ ${}}`
     // 2. empty name for a placeholder, aka `${}`
+    // 3. repeated group is nested, has no `?{}`, contains `${}` or its arguments are used outside of it
     static InputData create(@Nonnull String input) {
         //noinspection ConstantConditions
         if (input == null) {
@@ -32,12 +42,83 @@ abstract class InputData {
         return new InputDataImpl(input);
     }
 
+    // restores compiled form of an input (written by a processor of `@PrecompiledTemplate`),
+    // might throw IllegalStateException if it was written by a different version of the library
+    static InputData create(@Nonnull String[] compiledStrings, @Nonnull int[] compiledTable) {
+        return new InputDataImpl(compiledStrings, compiledTable);
+    }
+
     // okay, this should return ready-for-use string
     // `select * from %s where name = ?`
     abstract String formattedInput();
 
-    abstract Collection<Integer> bindArgIndexes(String name);
-    abstract Collection<Integer> formatArgIndexes(String name);
+    // formatted input with repeated group (if present) expanded `rows` times, for example
+    // `insert into t(a, b) values (?, ?), (?, ?)` for 2 rows
+    abstract String formattedInput(int rows);
+
+    // formatted input where each `?` outside of repeated group is repeated `bindCounts[i]` times
+    // (`i` is the index of a bind argument), for example `where id in (?, ?, ?)`.
+    // If `bindCounts` is null, then it's the same as `formattedInput(rows)`
+    abstract String formattedInput(int rows, @Nullable int[] bindCounts);
+
+    // renders compiled input with supplied format arguments, the same as calling
+    // `String.format(locale, formattedInput(rows, bindCounts), formatArgs)`, but `%s` and `%d` are appended directly
+    // `asciiDigits` indicates if locale uses `0-9` digits (so `%d` can be appended without Formatter).
+    // A format argument can be a Primitive marker, then its value is `formatPrimitives[i]`
+    abstract String render(
+            @Nonnull Locale locale,
+            boolean asciiDigits,
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts);
+
+    // the same as `render`, but appends to supplied builder (without creating a String)
+    abstract void renderTo(
+            @Nonnull StringBuilder builder,
+            @Nonnull Locale locale,
+            boolean asciiDigits,
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts);
+
+    // statistics: total length of literals (text without placeholders), maximum rendered width of
+    // a format argument (0 if it was not rendered yet) and estimated length of rendered statement
+    abstract int literalLength();
+    abstract int formatArgWidth(int index);
+    abstract int estimatedLength(int rows, @Nullable int[] bindCounts);
+
+    // repeated group: its arguments have ids in `groupArgsStart()..groupArgsEnd()` range and occupy
+    // `groupBindArgsLength()` positions in bind arguments array starting at `groupBindArgsStart()`.
+    // If there is no group `groupBindArgsLength()` returns 0
+    abstract int groupArgsStart();
+    abstract int groupArgsEnd();
+    abstract int groupBindArgsStart();
+    abstract int groupBindArgsLength();
+
+    // each distinct argument name has an id (`0..argsLength()`), -1 is returned if there is
+    // no argument with specified name
+    abstract int argumentId(@Nonnull String name);
+    @Nonnull
+    abstract String argumentName(int id);
+
+    // positions of an argument with id `x` in format (or bind) arguments array are stored in
+    // `positions[offsets[x]..offsets[x + 1])`. Returned arrays must not be modified
+    @Nonnull
+    abstract int[] formatArgOffsets();
+    @Nonnull
+    abstract int[] formatArgPositions();
+    @Nonnull
+    abstract int[] bindArgOffsets();
+    @Nonnull
+    abstract int[] bindArgPositions();
+
+    // copies of positions for an argument (empty if not present)
+    @Nonnull
+    abstract int[] bindArgIndexes(@Nonnull String name);
+    @Nonnull
+    abstract int[] formatArgIndexes(@Nonnull String name);
 
     abstract int bindArgsLength();
     abstract int formatArgsLength();
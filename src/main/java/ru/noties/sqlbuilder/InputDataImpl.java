@@ -17,25 +17,79 @@
 package ru.noties.sqlbuilder;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Formattable;
+import java.util.Formatter;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 class InputDataImpl extends InputData {
 
-    private Set<String> mArgumentsNames;
+    private static final int[] EMPTY = new int[0];
+
+    // expansions of the repeated group are cached for up to this number of rows
+    private static final int CACHED_ROWS = 64;
+
+    // width of a format argument that was not rendered yet
+    private static final int DEFAULT_WIDTH = 16;
+
+    // wider format arguments are not recorded in statistics, otherwise a single oversized render
+    // would make every following render of a (long-lived) template allocate that much
+    static final int MAX_WIDTH = 1024;
+
+    // each distinct argument name receives an id (in order of appearance)
+    private String[] mNames;
+    private Map<String, Integer> mIds;
 
     private String mFormattedInput; // with all substitutions
-    private Map<String, List<Integer>> mFormatArgs;
-    private Map<String, List<Integer>> mBindArgs;
 
-    private int mFormatArgsLength;
-    private int mBindArgsLength;
+    // positions of arguments in format/bind arrays, grouped by argument id: positions of
+    // argument with id `x` are `mFormatPositions[mFormatOffsets[x]..mFormatOffsets[x + 1])`
+    private int[] mFormatOffsets;
+    private int[] mFormatPositions;
+    private int[] mBindOffsets;
+    private int[] mBindPositions;
+
+    // compiled form of the input: `mLiterals[0] placeholder[0] mLiterals[1] ... placeholder[n - 1] mLiterals[n]`,
+    // where for each placeholder we store its kind, modifier (if it's a format one) and index
+    // of an argument in format arguments array (if it's a format one). A repeated group is a single
+    // placeholder (`?{}` inside it are not placeholders of compiled form)
+    private String[] mLiterals;
+    private byte[] mKinds;
+    private String[] mModifiers;
+    private int[] mIndexes;
+
+    private int mLiteralsLength;
+
+    // if input cannot be rendered segment by segment (for example, literals contain `%` that
+    // must be processed by Formatter), whole `mFormattedInput` is passed to String.format
+    private boolean mFormatterRequired;
+
+    // repeated group, formatted (`(?, ?)`) and its position in formatted input
+    private String mGroup;
+    private int mGroupOffset;
+    private int mGroupArgsStart;
+    private int mGroupArgsEnd;
+    private int mGroupBindArgsStart;
+    private int mGroupBindArgsLength;
+
+    // formatted input by number of rows (lazily filled)
+    private AtomicReferenceArray<String> mExpanded;
+
+    // statistics of rendering: maximum width of each format argument (by its index) and maximum
+    // length that arguments add to a statement rendered with Formatter (so it does not depend on
+    // number of rows), used to allocate output with its final size
+    private AtomicIntegerArray mWidths;
+    private final AtomicInteger mMaxArgumentsLength = new AtomicInteger();
 
     InputDataImpl(@Nonnull String input) {
         prepare(input);
@@ -46,12 +100,41 @@ class InputDataImpl extends InputData {
         int formatArgsLength = 0;
         int bindArgsLength = 0;
 
-        final Set<String> names = new HashSet<>(3);
+        final List<String> names = new ArrayList<>(3);
+        final Map<String, Integer> ids = new HashMap<>(3);
+
+        // output is never longer than input (placeholder `?{name}` becomes `?`, `${%d name}` becomes `%d`)
+        final StringBuilder builder = new StringBuilder(input.length());
+
+        // current literal (text between placeholders)
+        final StringBuilder literal = new StringBuilder();
+
+        final List<String> literals = new ArrayList<>(3);
+        final List<String> modifiers = new ArrayList<>(3);
+
+        // placeholders of compiled form (rarely many, so grow manually instead of boxing into lists)
+        int placeholders = 0;
+        byte[] kinds = new byte[4];
+        int[] indexes = new int[4];
 
-        final Map<String, List<Integer>> formatArgs = new HashMap<>(3);
-        final Map<String, List<Integer>> bindArgs = new HashMap<>(3);
+        // each occurrence of a named argument (including `?{}` inside repeated group)
+        int occurrences = 0;
+        boolean[] occurrenceBind = new boolean[4];
+        int[] occurrenceIds = new int[4];
+        int[] occurrenceIndexes = new int[4];
 
-        final StringBuilder builder = new StringBuilder();
+        boolean formatterRequired = false;
+
+        // repeated group `*{}`, `groupStart` is the index in input if we are inside a group
+        int groupStart = -1;
+        int groupOffset = -1;
+        // plain `{` inside a group (for example in a string literal), group is closed by the `}` that balances them
+        int groupDepth = 0;
+        String group = null;
+        int groupArgsStart = 0;
+        int groupArgsEnd = 0;
+        int groupBindArgsStart = 0;
+        int groupBindArgsEnd = 0;
 
         // so, we are tracking the `${}` to format and `?{}` to place-hold
 
@@ -67,21 +150,77 @@ class InputDataImpl extends InputData {
                 // check the previous char to detect what kind of arg is that
                 if (i > 0) {
 
-                    isFormatArg = '$' == input.charAt(i - 1);
-                    isBindArg = !isFormatArg && '?' == input.charAt(i - 1);
+                    final char previous = input.charAt(i - 1);
+
+                    isFormatArg = '$' == previous;
+                    isBindArg = !isFormatArg && '?' == previous;
+
+                    final boolean isGroup = start == -1 && '*' == previous;
 
                     if (start != -1 && (isFormatArg || isBindArg)) {
                         throw new IllegalStateException("Nested placeholders detected at index: `" + i + "` " +
                                 ". Input: `" + input + "`");
                     }
 
-                    if (isBindArg || isFormatArg) {
+                    if (isGroup) {
+
+                        if (groupStart != -1) {
+                            throw new IllegalStateException("Nested repeated group detected at index: `" + i + "`. " +
+                                    "Input: `" + input + "`");
+                        }
+
+                        if (group != null) {
+                            throw new IllegalStateException("Only one repeated group is allowed, second one " +
+                                    "detected at index: `" + i + "`. Input: `" + input + "`");
+                        }
+
+                        // remove previous char
+                        builder.setLength(builder.length() - 1);
+                        literal.setLength(literal.length() - 1);
+
+                        final String value = literal.toString();
+                        literals.add(value);
+                        literal.setLength(0);
+
+                        if (value.indexOf('%') != -1) {
+                            formatterRequired = true;
+                        }
+
+                        if (placeholders == kinds.length) {
+                            kinds = Arrays.copyOf(kinds, placeholders << 1);
+                            indexes = Arrays.copyOf(indexes, placeholders << 1);
+                        }
+                        modifiers.add(null);
+                        kinds[placeholders] = KIND_GROUP;
+                        indexes[placeholders] = -1;
+                        placeholders += 1;
+
+                        groupStart = i - 1;
+                        groupOffset = builder.length();
+                        groupArgsStart = names.size();
+                        groupBindArgsStart = bindArgsLength;
+
+                    } else if (isBindArg || isFormatArg) {
+
+                        if (isFormatArg && groupStart != -1) {
+                            throw new IllegalStateException("Format arguments are not allowed inside repeated " +
+                                    "group, detected at index: `" + i + "`. Input: `" + input + "`");
+                        }
+
                         start = i - 1;
 
                         // we also need to remove previous char
                         builder.setLength(builder.length() - 1);
+                        if (groupStart == -1) {
+                            literal.setLength(literal.length() - 1);
+                        }
                     } else {
                         builder.append('{');
+                        if (groupStart == -1) {
+                            literal.append('{');
+                        } else {
+                            groupDepth += 1;
+                        }
                     }
                 }
             } else if ('}' == c && start != -1) {
@@ -94,23 +233,37 @@ class InputDataImpl extends InputData {
                 }
 
                 final String name = input.substring(left, i);
-                if (isBindArg) {
-                    // okay, here is what we are doing
-                    List<Integer> indexes = bindArgs.get(name);
-                    if (indexes == null) {
-                        indexes = new ArrayList<>(3);
-                        bindArgs.put(name, indexes);
+
+                // `?{}` inside a repeated group are part of the group placeholder
+                final boolean isPlaceholder = groupStart == -1;
+
+                if (isPlaceholder) {
+
+                    final String value = literal.toString();
+                    literals.add(value);
+                    literal.setLength(0);
+
+                    if (value.indexOf('%') != -1) {
+                        // literal must be processed by Formatter (if there are format arguments)
+                        formatterRequired = true;
                     }
-                    indexes.add(bindArgsLength++);
-                    names.add(name);
+                }
+
+                final String argumentName;
+                final int index;
+                final byte kind;
+                final String modifier;
+
+                if (isBindArg) {
+                    argumentName = name;
+                    modifier = null;
+                    kind = KIND_BIND;
+                    index = bindArgsLength++;
                     builder.append('?');
                 } else if (isFormatArg) {
 
                     // here is another spin: we can have modifiers here
 
-                    final String modifier;
-                    final String argumentName;
-
                     final String[] split = name.split(" ");
 
                     if (split.length == 1) {
@@ -121,24 +274,89 @@ class InputDataImpl extends InputData {
                         argumentName = split[1];
                     }
 
-                    List<Integer> indexes = formatArgs.get(argumentName);
-                    if (indexes == null) {
-                        indexes = new ArrayList<>(3);
-                        formatArgs.put(argumentName, indexes);
+                    if (!isSingleArgumentModifier(modifier)) {
+                        // modifier consumes more or less than one argument, so arguments
+                        // cannot be formatted one by one
+                        formatterRequired = true;
                     }
-                    names.add(argumentName);
-                    indexes.add(formatArgsLength++);
+
+                    if ("%s".equals(modifier)) {
+                        kind = KIND_STRING;
+                    } else if ("%d".equals(modifier)) {
+                        kind = KIND_DECIMAL;
+                    } else {
+                        kind = KIND_FORMAT;
+                    }
+
+                    index = formatArgsLength++;
                     builder.append(modifier);
                 } else {
                     throw new IllegalStateException("Unexpected state");
                 }
 
+                Integer id = ids.get(argumentName);
+                if (id == null) {
+                    id = names.size();
+                    ids.put(argumentName, id);
+                    names.add(argumentName);
+                } else if ((groupStart != -1 && id < groupArgsStart)
+                        || (groupStart == -1 && id >= groupArgsStart && id < groupArgsEnd)) {
+                    // ids of group arguments are contiguous
+                    throw new IllegalStateException("Arguments of repeated group cannot be used outside of it: `" +
+                            argumentName + "`. Input: `" + input + "`");
+                }
+
+                if (isPlaceholder) {
+                    if (placeholders == kinds.length) {
+                        kinds = Arrays.copyOf(kinds, placeholders << 1);
+                        indexes = Arrays.copyOf(indexes, placeholders << 1);
+                    }
+                    modifiers.add(modifier);
+                    kinds[placeholders] = kind;
+                    indexes[placeholders] = index;
+                    placeholders += 1;
+                }
+
+                if (occurrences == occurrenceIds.length) {
+                    occurrenceBind = Arrays.copyOf(occurrenceBind, occurrences << 1);
+                    occurrenceIds = Arrays.copyOf(occurrenceIds, occurrences << 1);
+                    occurrenceIndexes = Arrays.copyOf(occurrenceIndexes, occurrences << 1);
+                }
+                occurrenceBind[occurrences] = isBindArg;
+                occurrenceIds[occurrences] = id;
+                occurrenceIndexes[occurrences] = index;
+                occurrences += 1;
+
                 start = -1;
                 isBindArg = false;
                 isFormatArg = false;
 
+            } else if ('}' == c && groupStart != -1 && groupDepth > 0) {
+
+                groupDepth -= 1;
+                builder.append(c);
+
+            } else if ('}' == c && groupStart != -1) {
+
+                if (bindArgsLength == groupBindArgsStart) {
+                    throw new IllegalStateException("Repeated group must contain at least one `?{}` argument, " +
+                            "group at index: `" + groupStart + "`. Input: `" + input + "`");
+                }
+
+                group = builder.substring(groupOffset);
+                if (group.indexOf('%') != -1) {
+                    formatterRequired = true;
+                }
+
+                groupArgsEnd = names.size();
+                groupBindArgsEnd = bindArgsLength;
+                groupStart = -1;
+
             } else if (start == -1) {
                 builder.append(c);
+                if (groupStart == -1) {
+                    literal.append(c);
+                }
             }
         }
 
@@ -149,12 +367,202 @@ class InputDataImpl extends InputData {
             throw new IllegalStateException("Bind argument is not closed. Input: `" + input + "`");
         }
 
-        mArgumentsNames = names;
+        if (groupStart != -1) {
+            throw new IllegalStateException("Repeated group is not closed. Input: `" + input + "`");
+        }
+
+        final String last = literal.toString();
+        literals.add(last);
+        if (last.indexOf('%') != -1) {
+            formatterRequired = true;
+        }
+
+        final String[] literalsArray = literals.toArray(new String[placeholders + 1]);
+
+        final int namesLength = names.size();
+
+        // count positions of each argument (shifted by one, so after the prefix sum
+        // `offsets[x]` contains the start of argument `x`)
+        final int[] formatOffsets = new int[namesLength + 1];
+        final int[] bindOffsets = new int[namesLength + 1];
+        for (int i = 0; i < occurrences; i++) {
+            if (occurrenceBind[i]) {
+                bindOffsets[occurrenceIds[i] + 1] += 1;
+            } else {
+                formatOffsets[occurrenceIds[i] + 1] += 1;
+            }
+        }
+        for (int i = 0; i < namesLength; i++) {
+            formatOffsets[i + 1] += formatOffsets[i];
+            bindOffsets[i + 1] += bindOffsets[i];
+        }
+
+        // occurrences are iterated in order, so positions of each argument are ascending
+        final int[] formatPositions = new int[formatArgsLength];
+        final int[] bindPositions = new int[bindArgsLength];
+        final int[] formatFill = Arrays.copyOf(formatOffsets, namesLength);
+        final int[] bindFill = Arrays.copyOf(bindOffsets, namesLength);
+        for (int i = 0; i < occurrences; i++) {
+            if (occurrenceBind[i]) {
+                bindPositions[bindFill[occurrenceIds[i]]++] = occurrenceIndexes[i];
+            } else {
+                formatPositions[formatFill[occurrenceIds[i]]++] = occurrenceIndexes[i];
+            }
+        }
+
+        mNames = names.toArray(new String[namesLength]);
+        mIds = ids;
         mFormattedInput = builder.toString();
-        mFormatArgs = formatArgs;
-        mBindArgs = bindArgs;
-        mFormatArgsLength = formatArgsLength;
-        mBindArgsLength = bindArgsLength;
+        mFormatOffsets = formatOffsets;
+        mFormatPositions = formatPositions;
+        mBindOffsets = bindOffsets;
+        mBindPositions = bindPositions;
+
+        mLiterals = literalsArray;
+        mKinds = Arrays.copyOf(kinds, placeholders);
+        mModifiers = modifiers.toArray(new String[placeholders]);
+        mIndexes = Arrays.copyOf(indexes, placeholders);
+        mFormatterRequired = formatterRequired;
+
+        mGroup = group;
+        mGroupOffset = groupOffset;
+        mGroupArgsStart = groupArgsStart;
+        mGroupArgsEnd = groupArgsEnd;
+        mGroupBindArgsStart = groupBindArgsStart;
+        mGroupBindArgsLength = groupBindArgsEnd - groupBindArgsStart;
+
+        derive();
+    }
+
+    // initializes state that is derived from the compiled form
+    private void derive() {
+
+        int literalsLength = 0;
+        for (String value: mLiterals) {
+            literalsLength += value.length();
+        }
+
+        mLiteralsLength = literalsLength;
+        mExpanded = mGroup != null
+                ? new AtomicReferenceArray<String>(CACHED_ROWS + 1)
+                : null;
+        mWidths = new AtomicIntegerArray(mFormatPositions.length);
+    }
+
+    // compiled form is written to a table of ints and a table of strings (possibly in generated code):
+    // strings: `formattedInput, group, names[n], literals[p + 1], modifiers[p]`
+    // table: `version, n, p, formatterRequired, groupOffset, groupArgsStart, groupArgsEnd, groupBindArgsStart,
+    // groupBindArgsLength, kinds[p], indexes[p], formatOffsets[n + 1], formatPositions[], bindOffsets[n + 1], bindPositions[]`
+    // (lengths of positions are the last values of offsets). Version changes with each change of the compiled form
+    static final int COMPILED_VERSION = 1;
+
+    private static final int COMPILED_HEADER = 9;
+
+    InputDataImpl(@Nonnull String[] strings, @Nonnull int[] table) {
+
+        if (table.length < COMPILED_HEADER
+                || table[0] != COMPILED_VERSION) {
+            throw new IllegalStateException("Precompiled template has unsupported version, it must be " +
+                    "generated again with the current version of the library");
+        }
+
+        final int n = table[1];
+        final int p = table[2];
+
+        int s = 0;
+        mFormattedInput = strings[s++];
+        mGroup = strings[s++];
+        mNames = Arrays.copyOfRange(strings, s, s += n);
+        mLiterals = Arrays.copyOfRange(strings, s, s += p + 1);
+        mModifiers = Arrays.copyOfRange(strings, s, s + p);
+
+        final Map<String, Integer> ids = new HashMap<>(Math.max(3, (int) (n / .75F) + 1));
+        for (int i = 0; i < n; i++) {
+            ids.put(mNames[i], i);
+        }
+        mIds = ids;
+
+        mFormatterRequired = table[3] != 0;
+        mGroupOffset = table[4];
+        mGroupArgsStart = table[5];
+        mGroupArgsEnd = table[6];
+        mGroupBindArgsStart = table[7];
+        mGroupBindArgsLength = table[8];
+
+        int t = COMPILED_HEADER;
+        mKinds = new byte[p];
+        for (int i = 0; i < p; i++) {
+            mKinds[i] = (byte) table[t++];
+        }
+        mIndexes = Arrays.copyOfRange(table, t, t += p);
+        mFormatOffsets = Arrays.copyOfRange(table, t, t += n + 1);
+        mFormatPositions = Arrays.copyOfRange(table, t, t += mFormatOffsets[n]);
+        mBindOffsets = Arrays.copyOfRange(table, t, t += n + 1);
+        mBindPositions = Arrays.copyOfRange(table, t, t + mBindOffsets[n]);
+
+        derive();
+    }
+
+    @Nonnull
+    String[] compiledStrings() {
+        final int n = mNames.length;
+        final int p = mKinds.length;
+        final String[] strings = new String[2 + n + p + 1 + p];
+        int s = 0;
+        strings[s++] = mFormattedInput;
+        strings[s++] = mGroup;
+        System.arraycopy(mNames, 0, strings, s, n);
+        System.arraycopy(mLiterals, 0, strings, s += n, p + 1);
+        System.arraycopy(mModifiers, 0, strings, s + p + 1, p);
+        return strings;
+    }
+
+    @Nonnull
+    int[] compiledTable() {
+        final int n = mNames.length;
+        final int p = mKinds.length;
+        final int[] table = new int[COMPILED_HEADER + p + p
+                + mFormatOffsets.length + mFormatPositions.length
+                + mBindOffsets.length + mBindPositions.length];
+        table[0] = COMPILED_VERSION;
+        table[1] = n;
+        table[2] = p;
+        table[3] = mFormatterRequired ? 1 : 0;
+        table[4] = mGroupOffset;
+        table[5] = mGroupArgsStart;
+        table[6] = mGroupArgsEnd;
+        table[7] = mGroupBindArgsStart;
+        table[8] = mGroupBindArgsLength;
+        int t = COMPILED_HEADER;
+        for (int i = 0; i < p; i++) {
+            table[t++] = mKinds[i];
+        }
+        t = copy(mIndexes, table, t);
+        t = copy(mFormatOffsets, table, t);
+        t = copy(mFormatPositions, table, t);
+        t = copy(mBindOffsets, table, t);
+        copy(mBindPositions, table, t);
+        return table;
+    }
+
+    private static int copy(@Nonnull int[] source, @Nonnull int[] destination, int position) {
+        System.arraycopy(source, 0, destination, position, source.length);
+        return position + source.length;
+    }
+
+    // `%.2f`, `%S`, `%10s` are OK, but `%n`, `%%`, `%1$s`, `%<s`, `%s%s` are not (as
+    // they won't consume exactly one next argument from the arguments array)
+    private static boolean isSingleArgumentModifier(String modifier) {
+        final int length = modifier.length();
+        if (length < 2
+                || modifier.charAt(0) != '%'
+                || modifier.indexOf('%', 1) != -1
+                || modifier.indexOf('$') != -1
+                || modifier.indexOf('<') != -1) {
+            return false;
+        }
+        final char conversion = modifier.charAt(length - 1);
+        return conversion != 'n' && conversion != '%';
     }
 
     @Override
@@ -163,48 +571,387 @@ class InputDataImpl extends InputData {
     }
 
     @Override
-    public Collection<Integer> bindArgIndexes(String name) {
-        final List<Integer> out;
-        final List<Integer> indexes = mBindArgs.get(name);
-        if (indexes == null) {
-            //noinspection unchecked
-            out = Collections.EMPTY_LIST;
-        } else {
-            out = Collections.unmodifiableList(indexes);
+    public String formattedInput(int rows) {
+
+        if (mGroup == null || rows == 1) {
+            return mFormattedInput;
         }
+
+        // the same expansions are requested again and again (rows are usually sent in chunks
+        // of the same size), so cache them. If multiple threads race here, result is the same
+        final boolean cache = rows <= CACHED_ROWS;
+
+        String out = cache
+                ? mExpanded.get(rows)
+                : null;
+
+        if (out == null) {
+
+            final String input = mFormattedInput;
+            final String group = mGroup;
+            final int offset = mGroupOffset;
+
+            final StringBuilder builder = new StringBuilder(input.length() + (rows - 1) * (group.length() + 2));
+            builder.append(input, 0, offset);
+            appendGroup(builder, rows);
+            builder.append(input, offset + group.length(), input.length());
+
+            out = builder.toString();
+
+            if (cache) {
+                mExpanded.set(rows, out);
+            }
+        }
+
         return out;
     }
 
     @Override
-    public Collection<Integer> formatArgIndexes(String name) {
-        final List<Integer> out;
-        final List<Integer> indexes = mFormatArgs.get(name);
-        if (indexes == null) {
-            //noinspection unchecked
-            out = Collections.EMPTY_LIST;
-        } else {
-            out = Collections.unmodifiableList(indexes);
+    public String formattedInput(int rows, @Nullable int[] bindCounts) {
+
+        if (bindCounts == null) {
+            return formattedInput(rows);
+        }
+
+        final String[] literals = mLiterals;
+        final byte[] kinds = mKinds;
+
+        final StringBuilder builder = new StringBuilder(mFormattedInput.length() + (bindCounts.length << 2));
+
+        for (int i = 0, length = kinds.length; i < length; i++) {
+
+            builder.append(literals[i]);
+
+            if (KIND_BIND == kinds[i]) {
+                appendBind(builder, bindCounts[mIndexes[i]]);
+            } else if (KIND_GROUP == kinds[i]) {
+                appendGroup(builder, rows);
+            } else {
+                builder.append(mModifiers[i]);
+            }
+        }
+
+        builder.append(literals[literals.length - 1]);
+
+        return builder.toString();
+    }
+
+    private static void appendBind(@Nonnull StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append('?');
+        }
+    }
+
+    private void appendGroup(@Nonnull StringBuilder builder, int rows) {
+        final String group = mGroup;
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(group);
+        }
+    }
+
+    @Override
+    public String render(
+            @Nonnull Locale locale,
+            boolean asciiDigits,
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts) {
+
+        // allocated with the final size (if arguments are not wider than previously rendered ones)
+        final StringBuilder builder = new StringBuilder(estimatedLength(rows, bindCounts));
+        renderTo(builder, locale, asciiDigits, formatArgs, formatPrimitives, rows, bindCounts);
+        return builder.toString();
+    }
+
+    @Override
+    public void renderTo(
+            @Nonnull StringBuilder builder,
+            @Nonnull Locale locale,
+            boolean asciiDigits,
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts) {
+
+        if (mFormatterRequired) {
+            final int start = builder.length();
+            final String pattern = formattedInput(rows, bindCounts);
+            new Formatter(builder, locale).format(locale, pattern, boxed(formatArgs, formatPrimitives));
+            record(mMaxArgumentsLength, builder.length() - start - pattern.length(), MAX_WIDTH * Math.max(1, mWidths.length()));
+            return;
+        }
+
+        final AtomicIntegerArray widths = mWidths;
+        int start;
+
+        final String[] literals = mLiterals;
+        final byte[] kinds = mKinds;
+        final int[] indexes = mIndexes;
+
+        // created only if there is a placeholder that cannot be rendered directly
+        Formatter formatter = null;
+
+        Object value;
+
+        for (int i = 0, length = kinds.length; i < length; i++) {
+
+            builder.append(literals[i]);
+
+            if (KIND_BIND == kinds[i]) {
+                if (bindCounts == null) {
+                    builder.append('?');
+                } else {
+                    appendBind(builder, bindCounts[indexes[i]]);
+                }
+                continue;
+            }
+
+            if (KIND_GROUP == kinds[i]) {
+                appendGroup(builder, rows);
+                continue;
+            }
+
+            value = formatArgs[indexes[i]];
+
+            start = builder.length();
+
+            if (value instanceof Primitive) {
+
+                //noinspection ConstantConditions
+                final long bits = formatPrimitives[indexes[i]];
+                final Primitive primitive = (Primitive) value;
+
+                if (KIND_STRING == kinds[i]) {
+                    primitive.append(builder, bits);
+                    record(widths, indexes[i], builder.length() - start);
+                    continue;
+                }
+
+                if (KIND_DECIMAL == kinds[i]
+                        && asciiDigits
+                        && primitive.isIntegral()) {
+                    builder.append(bits);
+                    record(widths, indexes[i], builder.length() - start);
+                    continue;
+                }
+
+                value = primitive.box(bits);
+            }
+
+            if (KIND_STRING == kinds[i] && !(value instanceof Formattable)) {
+                builder.append(value);
+                record(widths, indexes[i], builder.length() - start);
+                continue;
+            }
+
+            if (KIND_DECIMAL == kinds[i]
+                    && asciiDigits
+                    && (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+                builder.append(((Number) value).longValue());
+                record(widths, indexes[i], builder.length() - start);
+                continue;
+            }
+
+            if (formatter == null) {
+                formatter = new Formatter(builder, locale);
+            }
+            formatter.format(locale, mModifiers[i], value);
+            record(widths, indexes[i], builder.length() - start);
+        }
+
+        builder.append(literals[literals.length - 1]);
+    }
+
+    // widths only grow, so if multiple threads race here the biggest one is kept
+    private static void record(@Nonnull AtomicIntegerArray widths, int index, int width) {
+        if (width > MAX_WIDTH) {
+            return;
+        }
+        int current;
+        while (width > (current = widths.get(index))) {
+            if (widths.compareAndSet(index, current, width)) {
+                break;
+            }
+        }
+    }
+
+    private static void record(@Nonnull AtomicInteger length, int value, int max) {
+        if (value > max) {
+            return;
+        }
+        int current;
+        while (value > (current = length.get())) {
+            if (length.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public int literalLength() {
+        return mLiteralsLength;
+    }
+
+    @Override
+    public int formatArgWidth(int index) {
+        return mWidths.get(index);
+    }
+
+    @Override
+    public int estimatedLength(int rows, @Nullable int[] bindCounts) {
+
+        final int groupLength = mGroup != null
+                ? rows * (mGroup.length() + 2) - 2
+                : 0;
+
+        if (mFormatterRequired) {
+            // there are no widths of separate arguments in this case
+            // formatted input already contains the group once
+            return mFormattedInput.length() + (mGroup != null ? groupLength - mGroup.length() : 0)
+                    + mMaxArgumentsLength.get();
+        }
+
+        int length = mLiteralsLength + groupLength;
+
+        final byte[] kinds = mKinds;
+        final int[] indexes = mIndexes;
+        final AtomicIntegerArray widths = mWidths;
+
+        int width;
+
+        for (int i = 0, size = kinds.length; i < size; i++) {
+            if (KIND_BIND == kinds[i]) {
+                // `?, ?, ?`
+                length += bindCounts == null
+                        ? 1
+                        : bindCounts[indexes[i]] * 3 - 2;
+            } else if (KIND_GROUP != kinds[i]) {
+                width = widths.get(indexes[i]);
+                length += width == 0
+                        ? DEFAULT_WIDTH
+                        : width;
+            }
+        }
+
+        return length;
+    }
+
+    @Nonnull
+    private static Object[] boxed(@Nonnull Object[] formatArgs, @Nullable long[] formatPrimitives) {
+
+        if (formatPrimitives == null) {
+            return formatArgs;
+        }
+
+        final Object[] out = formatArgs.clone();
+        for (int i = 0, length = out.length; i < length; i++) {
+            out[i] = Primitive.value(out[i], formatPrimitives, i);
         }
         return out;
     }
 
+    @Override
+    public int groupArgsStart() {
+        return mGroupArgsStart;
+    }
+
+    @Override
+    public int groupArgsEnd() {
+        return mGroupArgsEnd;
+    }
+
+    @Override
+    public int groupBindArgsStart() {
+        return mGroupBindArgsStart;
+    }
+
+    @Override
+    public int groupBindArgsLength() {
+        return mGroupBindArgsLength;
+    }
+
+    @Override
+    public int argumentId(@Nonnull String name) {
+        final Integer id = mIds.get(name);
+        return id == null
+                ? -1
+                : id;
+    }
+
+    @Nonnull
+    @Override
+    public String argumentName(int id) {
+        return mNames[id];
+    }
+
+    @Nonnull
+    @Override
+    public int[] formatArgOffsets() {
+        return mFormatOffsets;
+    }
+
+    @Nonnull
+    @Override
+    public int[] formatArgPositions() {
+        return mFormatPositions;
+    }
+
+    @Nonnull
+    @Override
+    public int[] bindArgOffsets() {
+        return mBindOffsets;
+    }
+
+    @Nonnull
+    @Override
+    public int[] bindArgPositions() {
+        return mBindPositions;
+    }
+
+    @Nonnull
+    @Override
+    public int[] bindArgIndexes(@Nonnull String name) {
+        return indexes(argumentId(name), mBindOffsets, mBindPositions);
+    }
+
+    @Nonnull
+    @Override
+    public int[] formatArgIndexes(@Nonnull String name) {
+        return indexes(argumentId(name), mFormatOffsets, mFormatPositions);
+    }
+
+    private static int[] indexes(int id, int[] offsets, int[] positions) {
+        if (id == -1
+                || offsets[id] == offsets[id + 1]) {
+            return EMPTY;
+        }
+        return Arrays.copyOfRange(positions, offsets[id], offsets[id + 1]);
+    }
+
     @Override
     public int bindArgsLength() {
-        return mBindArgsLength;
+        return mBindPositions.length;
     }
 
     @Override
     public int formatArgsLength() {
-        return mFormatArgsLength;
+        return mFormatPositions.length;
     }
 
     @Override
     public int argsLength() {
-        return mArgumentsNames.size();
+        return mNames.length;
     }
 
     @Override
     public Collection<String> argumentNames() {
-        return Collections.unmodifiableSet(mArgumentsNames);
+        return Collections.unmodifiableList(Arrays.asList(mNames));
     }
 }
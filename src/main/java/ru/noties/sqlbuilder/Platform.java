@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nullable;
+
+// Differences between Java versions. This is the Java 7 version, multi-release jar contains
+// versions for Java 11 (`src/java11`) and Java 21 (`src/java21`) that replace it on those
+// runtimes, all of them must have the same methods
+abstract class Platform {
+
+    // Java version this class was compiled for
+    static final int VERSION = 7;
+
+    // a hash of current thread to spread threads between stripes
+    static int threadHash() {
+        return (int) Thread.currentThread().getId();
+    }
+
+    // if values kept in ThreadLocal are reused by subsequent calls on current thread
+    static boolean reusesThreadLocals() {
+        return true;
+    }
+
+    // Java Flight Recorder events are available since Java 11
+    @Nullable
+    static SqlEvents events() {
+        return null;
+    }
+
+    private Platform() {
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compiled form of an input, that is restored by {@link SqlTemplate#precompiled(String, java.util.Locale, String[], int[])}.
+ * This class is used by `sqlbuilder-processor` to generate code for {@link PrecompiledTemplate} fields
+ * and must not be used directly (compiled form is not a stable format)
+ */
+public final class PrecompiledInput {
+
+    /**
+     * @param input to parse
+     * @throws IllegalStateException if input is malformed
+     */
+    @Nonnull
+    public static PrecompiledInput compile(@Nonnull String input) throws IllegalStateException {
+        //noinspection ConstantConditions
+        if (input == null) {
+            throw new NullPointerException("`input` string parameter cannot be null");
+        }
+        return new PrecompiledInput(new InputDataImpl(input));
+    }
+
+    private final InputDataImpl mData;
+
+    private PrecompiledInput(@Nonnull InputDataImpl data) {
+        mData = data;
+    }
+
+    /**
+     * @return `compiledStrings` argument of {@link SqlTemplate#precompiled(String, java.util.Locale, String[], int[])}
+     */
+    @Nonnull
+    public String[] strings() {
+        return mData.compiledStrings();
+    }
+
+    /**
+     * @return `compiledTable` argument of {@link SqlTemplate#precompiled(String, java.util.Locale, String[], int[])}
+     */
+    @Nonnull
+    public int[] table() {
+        return mData.compiledTable();
+    }
+
+    /**
+     * @see SqlTemplate#slotCount()
+     */
+    public int slotCount() {
+        return mData.argsLength();
+    }
+
+    /**
+     * @see SqlTemplate#slotName(int)
+     */
+    @Nonnull
+    public String slotName(int slot) {
+        return mData.argumentName(slot);
+    }
+
+    /**
+     * @return true if input has a repeated group (`*{}`)
+     */
+    public boolean hasGroup() {
+        return mData.groupArgsEnd() > mData.groupArgsStart();
+    }
+}
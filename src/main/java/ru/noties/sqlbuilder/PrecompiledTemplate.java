@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a constant String field as an input of a template that is compiled at build time by
+ * `sqlbuilder-processor` annotation processor. Malformed inputs are reported as compilation errors.
+ * For each class with annotated fields a class named `{ClassName}Templates` is generated (in the same package)
+ * that contains a ready {@link SqlTemplate} for each field and a typed builder with a bind method for each argument:
+ * <pre>
+ * class Queries {
+ *     @PrecompiledTemplate
+ *     static final String FIND_USER = "select * from ${table} where id = ?{id}";
+ * }
+ *
+ * final SqlTemplate template = QueriesTemplates.FIND_USER;
+ * final String sql = QueriesTemplates.FindUser.create()
+ *         .table("users")
+ *         .id(33L)
+ *         .sqlStatement();
+ * </pre>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface PrecompiledTemplate {
+
+    /**
+     * @return IETF BCP 47 language tag of a locale for the template (for example `de-DE`),
+     * if empty {@link java.util.Locale#US} is used
+     */
+    String locale() default "";
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+
+// a value bound with `bindLong`, `bindInt`, `bindDouble` or `bindBoolean` is stored as a type marker
+// in place of the value and its bits are stored in a parallel `long[]` array, so it's never boxed
+// unless it must be exported as an object (for example in `sqlBindArguments()`)
+enum Primitive {
+
+    LONG {
+        @Override
+        Object box(long bits) {
+            return bits;
+        }
+
+        @Override
+        void append(@Nonnull StringBuilder builder, long bits) {
+            builder.append(bits);
+        }
+    },
+
+    INT {
+        @Override
+        Object box(long bits) {
+            return (int) bits;
+        }
+
+        @Override
+        void append(@Nonnull StringBuilder builder, long bits) {
+            builder.append((int) bits);
+        }
+    },
+
+    DOUBLE {
+        @Override
+        Object box(long bits) {
+            return Double.longBitsToDouble(bits);
+        }
+
+        @Override
+        void append(@Nonnull StringBuilder builder, long bits) {
+            builder.append(Double.longBitsToDouble(bits));
+        }
+    },
+
+    BOOLEAN {
+        @Override
+        Object box(long bits) {
+            return bits != 0L;
+        }
+
+        @Override
+        void append(@Nonnull StringBuilder builder, long bits) {
+            builder.append(bits != 0L);
+        }
+    };
+
+    abstract Object box(long bits);
+
+    // the same as `%s`
+    abstract void append(@Nonnull StringBuilder builder, long bits);
+
+    // integral values can be appended directly as `%d` (if locale uses ascii digits)
+    boolean isIntegral() {
+        return this == LONG || this == INT;
+    }
+
+    // returns boxed value if it's a primitive marker
+    static Object value(Object value, long[] primitives, int index) {
+        return value instanceof Primitive
+                ? ((Primitive) value).box(primitives[index])
+                : value;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Batch mode for a SQL statement that is executed many times with different SQL binding
+ * arguments (`?{}`), for example with JDBC `PreparedStatement#addBatch()`. Can be obtained
+ * via {@link SqlStatementBuilder#batch()} call. SQL statement is validated and rendered once
+ * (when batch is created), so all format arguments (`${}`) must be bound before that:
+ * {@code
+ *      final SqlBatch batch = SqlStatementBuilder.create("insert into ${table}(id, name) values (?{id}, ?{name})")
+ *              .bind("table", "users")
+ *              .batch();
+ *      for (User user: users) {
+ *          batch.bind("id", user.id)
+ *                  .bind("name", user.name)
+ *                  .addRow();
+ *      }
+ *      batch.sqlStatement(); // `insert into users(id, name) values (?, ?)`
+ *      batch.sqlBindArgumentsRows(); // Object[][] with a row for each user
+ * }
+ *
+ * SQL binding arguments that were bound in the builder (before batch was created) are used
+ * for each row, unless they are bound again for a row. A format argument cannot be bound for
+ * a row (even if it's also used as a SQL binding argument).
+ *
+ * This class is not thread safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlBatch {
+
+    /**
+     * @return SQL statement (the same for each row)
+     */
+    @Nonnull
+    public abstract String sqlStatement();
+
+    /**
+     * Binds a value for the current row
+     * @param name of the SQL binding argument
+     * @param value value of the binding argument
+     * @return self to chain calls
+     * @throws IllegalArgumentException if input has no named argument with specified name
+     * @throws IllegalStateException if named argument is a format argument or if value is a collection
+     * or an array (it cannot be expanded for a row of a batch)
+     */
+    @Nonnull
+    public abstract SqlBatch bind(@Nonnull String name, @Nullable Object value)
+            throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * @see #bind(String, Object)
+     * @see SqlTemplate#slot(String)
+     */
+    @Nonnull
+    public abstract SqlBatch bind(int slot, @Nullable Object value)
+            throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Adds current row to this batch and starts a new one
+     * @return self to chain calls
+     * @throws IllegalStateException if not all SQL binding arguments are bound for the current row
+     */
+    @Nonnull
+    public abstract SqlBatch addRow() throws IllegalStateException;
+
+    /**
+     * @return number of added rows
+     */
+    public abstract int size();
+
+    /**
+     * @param index of the row
+     * @return SQL binding arguments of a row
+     */
+    @Nonnull
+    public abstract Object[] sqlBindArguments(int index);
+
+    /**
+     * @return SQL binding arguments of all added rows (the first index is a row)
+     */
+    @Nonnull
+    public abstract Object[][] sqlBindArgumentsRows();
+
+    /**
+     * Removes all added rows and bindings of the current row (bindings from the builder are kept)
+     */
+    public abstract void clear();
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+class SqlBatchImpl extends SqlBatch {
+
+    private final SqlTemplateImpl mTemplate;
+    private final InputData mData;
+    private final String mSqlStatement;
+
+    // values bound in the builder, used if a row has no own value
+    private final Object[] mDefaults;
+    private final boolean[] mDefaultsBound;
+
+    // current row
+    private final Object[] mValues;
+    private final boolean[] mBound;
+
+    private final List<Object[]> mRows;
+
+    // `defaults` and `defaultsBound` are copied
+    SqlBatchImpl(
+            @Nonnull SqlTemplateImpl template,
+            @Nonnull String sqlStatement,
+            @Nullable Object[] defaults,
+            @Nullable boolean[] defaultsBound) {
+
+        final InputData data = template.inputData();
+        final int length = data.argsLength();
+
+        mTemplate = template;
+        mData = data;
+        mSqlStatement = sqlStatement;
+        mDefaults = defaults != null
+                ? defaults.clone()
+                : new Object[length];
+        mDefaultsBound = defaultsBound != null
+                ? defaultsBound.clone()
+                : new boolean[length];
+        mValues = new Object[length];
+        mBound = new boolean[length];
+        mRows = new ArrayList<>();
+    }
+
+    // format arguments must be bound and input must have no named arguments that are not present
+    static void validate(
+            @Nonnull SqlTemplateImpl template,
+            @Nullable boolean[] bound,
+            @Nullable Set<String> notPresent) {
+
+        final InputData data = template.inputData();
+
+        if (notPresent != null && notPresent.size() > 0) {
+            throw new IllegalStateException("Bound arguments that are not present in the input: `" +
+                    notPresent + "`. Input: `" + template.input() + "`");
+        }
+
+        final int[] formatOffsets = data.formatArgOffsets();
+
+        Set<String> notBound = null;
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            if (formatOffsets[slot] != formatOffsets[slot + 1]
+                    && (bound == null || !bound[slot])) {
+                if (notBound == null) {
+                    notBound = new LinkedHashSet<>(3);
+                }
+                notBound.add(data.argumentName(slot));
+            }
+        }
+
+        if (notBound != null) {
+            throw new IllegalStateException("Format arguments must be bound before batch is created, " +
+                    "not bound: `" + notBound + "`. Input: `" + template.input() + "`");
+        }
+    }
+
+    @Nonnull
+    @Override
+    public String sqlStatement() {
+        return mSqlStatement;
+    }
+
+    @Nonnull
+    @Override
+    public SqlBatch bind(@Nonnull String name, @Nullable Object value) {
+        final int slot = mData.argumentId(name);
+        if (slot == -1) {
+            throw new IllegalArgumentException("Input has no named argument: `" + name + "`. " +
+                    "Input: `" + mTemplate.input() + "`");
+        }
+        return bind(slot, value);
+    }
+
+    @Nonnull
+    @Override
+    public SqlBatch bind(int slot, @Nullable Object value) {
+
+        if (slot < 0 || slot >= mValues.length) {
+            throw new IllegalArgumentException("Invalid slot: `" + slot + "`, input has `" +
+                    mValues.length + "` named arguments. Input: `" + mTemplate.input() + "`");
+        }
+
+        final int[] formatOffsets = mData.formatArgOffsets();
+        if (formatOffsets[slot] != formatOffsets[slot + 1]) {
+            throw new IllegalStateException("Format argument cannot be bound for a row: `" +
+                    mData.argumentName(slot) + "`. Input: `" + mTemplate.input() + "`");
+        }
+
+        SqlStatementBuilderImpl.checkNotExpandable(mTemplate, mData, slot, value, "an argument of a batch");
+
+        mValues[slot] = value;
+        mBound[slot] = true;
+
+        return this;
+    }
+
+    @Nonnull
+    @Override
+    public SqlBatch addRow() {
+
+        final int bindArgsLength = mData.bindArgsLength();
+        final int[] bindOffsets = mData.bindArgOffsets();
+        final int[] bindPositions = mData.bindArgPositions();
+
+        final Object[] row = new Object[bindArgsLength];
+
+        Object value;
+
+        for (int slot = 0, length = mValues.length; slot < length; slot++) {
+
+            if (bindOffsets[slot] == bindOffsets[slot + 1]) {
+                continue;
+            }
+
+            if (mBound[slot]) {
+                value = mValues[slot];
+            } else if (mDefaultsBound[slot]) {
+                value = mDefaults[slot];
+            } else {
+                throw notBoundException();
+            }
+
+            for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                row[bindPositions[i]] = value;
+            }
+        }
+
+        mRows.add(row);
+
+        Arrays.fill(mValues, null);
+        Arrays.fill(mBound, false);
+
+        return this;
+    }
+
+    @Nonnull
+    private IllegalStateException notBoundException() {
+
+        final int[] bindOffsets = mData.bindArgOffsets();
+
+        final Set<String> notBound = new LinkedHashSet<>(3);
+        for (int slot = 0, length = mValues.length; slot < length; slot++) {
+            if (bindOffsets[slot] != bindOffsets[slot + 1]
+                    && !mBound[slot]
+                    && !mDefaultsBound[slot]) {
+                notBound.add(mData.argumentName(slot));
+            }
+        }
+
+        final String message = "Some named arguments are not bound for a row: `" + notBound + "`. " +
+                "Input: `" + mTemplate.input() + "`";
+
+        if (SqlEvents.INSTANCE != null) {
+            SqlEvents.INSTANCE.validationFailed(mTemplate.input(), mData, message);
+        }
+
+        return new IllegalStateException(message);
+    }
+
+    @Override
+    public int size() {
+        return mRows.size();
+    }
+
+    @Nonnull
+    @Override
+    public Object[] sqlBindArguments(int index) {
+        return mRows.get(index);
+    }
+
+    @Nonnull
+    @Override
+    public Object[][] sqlBindArgumentsRows() {
+        return mRows.toArray(new Object[mRows.size()][]);
+    }
+
+    @Override
+    public void clear() {
+        mRows.clear();
+        Arrays.fill(mValues, null);
+        Arrays.fill(mBound, false);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+// Java Flight Recorder events. Implementation is compiled for Java 11 (`src/java11`) and created by
+// versioned Platform class, `INSTANCE` is null if it's not available (Java 7-10, no `jdk.jfr` module, or
+// `ru.noties.sqlbuilder.jfr` system property is `false`). Call sites check `INSTANCE != null`, which
+// is a constant for JIT. Event objects are passed as Object, so this class doesn't reference JFR
+abstract class SqlEvents {
+
+    @Nullable
+    static final SqlEvents INSTANCE = "false".equals(System.getProperty("ru.noties.sqlbuilder.jfr"))
+            ? null
+            : Platform.events();
+
+    // returns a started event (null if the event is disabled), which must be passed to `compiled`
+    @Nullable
+    abstract Object beginCompile();
+
+    // `data` is null if input cannot be parsed
+    abstract void compiled(@Nullable Object event, @Nonnull String input, @Nullable InputData data);
+
+    @Nullable
+    abstract Object beginRender();
+
+    abstract void rendered(@Nullable Object event, @Nonnull String input, @Nonnull InputData data, int length);
+
+    abstract void validationFailed(@Nonnull String input, @Nonnull InputData data, @Nonnull String message);
+}
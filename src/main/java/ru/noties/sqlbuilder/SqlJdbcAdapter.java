@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Binds statements created by {@link SqlStatementBuilder} to JDBC {@link PreparedStatement}s.
+ * Prepared statements are created for a {@link Connection} and cached by their SQL, so executing
+ * the same statement again only binds new arguments. Arguments are bound with typed setters
+ * ({@code setLong}, {@code setString}, etc) based on runtime type of a value.
+ * <p>
+ * Prepared statements returned by this adapter are owned by it and must not be closed by a caller,
+ * all of them are closed with {@link #close()} (the connection itself is not closed).
+ * This class is not thread-safe (as JDBC connections generally are not)
+ * <pre>
+ * final SqlJdbcAdapter adapter = SqlJdbcAdapter.create(connection);
+ * final ResultSet resultSet = adapter.prepare(builder).executeQuery();
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlJdbcAdapter implements AutoCloseable {
+
+    /**
+     * Creates an adapter that caches up to 64 prepared statements
+     * @see #create(Connection, int)
+     */
+    @Nonnull
+    public static SqlJdbcAdapter create(@Nonnull Connection connection) {
+        return create(connection, 64);
+    }
+
+    /**
+     * @param connection to prepare statements with
+     * @param maxStatements maximum number of cached prepared statements, when exceeded least recently
+     *                      used statement is closed
+     * @throws IllegalArgumentException if maxStatements is less than 1
+     */
+    @Nonnull
+    public static SqlJdbcAdapter create(@Nonnull Connection connection, int maxStatements)
+            throws IllegalArgumentException {
+        //noinspection ConstantConditions
+        if (connection == null) {
+            throw new NullPointerException("Connection cannot be null");
+        }
+        if (maxStatements < 1) {
+            throw new IllegalArgumentException("Max statements must be greater than 0: `" + maxStatements + "`");
+        }
+        return new SqlJdbcAdapterImpl(connection, maxStatements);
+    }
+
+    /**
+     * Binds a single value to a prepared statement with a typed setter
+     * @param statement to bind to
+     * @param index 1-based index of a parameter
+     * @param value to bind, null values are bound with {@link PreparedStatement#setNull(int, int)}
+     */
+    public static void bind(@Nonnull PreparedStatement statement, int index, @Nullable Object value)
+            throws SQLException {
+        SqlJdbcAdapterImpl.bindValue(statement, index, value);
+    }
+
+    /**
+     * @return a connection of this adapter
+     */
+    @Nonnull
+    public abstract Connection connection();
+
+    /**
+     * Obtains a prepared statement for {@link SqlStatementBuilder#sqlStatement()} and binds
+     * arguments to it. Arguments are taken directly from bound values (without creating
+     * an intermediate array) if possible
+     * @return a prepared statement with all arguments bound, must not be closed by a caller
+     * @throws IllegalStateException if there was an error preparing the SQL statement
+     * @throws SQLException if a prepared statement cannot be created or an argument cannot be bound
+     */
+    @Nonnull
+    public abstract PreparedStatement prepare(@Nonnull SqlStatementBuilder builder)
+            throws IllegalStateException, SQLException;
+
+    /**
+     * @return a prepared statement for {@link SqlStatement#sqlStatement()} with
+     * {@link SqlStatement#sqlBindArguments()} bound, must not be closed by a caller
+     * @throws SQLException if a prepared statement cannot be created or an argument cannot be bound
+     */
+    @Nonnull
+    public abstract PreparedStatement prepare(@Nonnull SqlStatement statement) throws SQLException;
+
+    /**
+     * Closes all cached prepared statements, adapter can still be used after this call
+     */
+    @Override
+    public abstract void close() throws SQLException;
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class SqlJdbcAdapterImpl extends SqlJdbcAdapter {
+
+    private final Connection mConnection;
+    private final int mMaxStatements;
+
+    // access-ordered, so the first entry is the least recently used one
+    private final Map<String, PreparedStatement> mStatements;
+
+    SqlJdbcAdapterImpl(@Nonnull Connection connection, int maxStatements) {
+        mConnection = connection;
+        mMaxStatements = maxStatements;
+        mStatements = new LinkedHashMap<>(16, .75F, true);
+    }
+
+    @Nonnull
+    @Override
+    public Connection connection() {
+        return mConnection;
+    }
+
+    @Nonnull
+    @Override
+    public PreparedStatement prepare(@Nonnull SqlStatementBuilder builder) throws SQLException {
+
+        // validates bindings (statement is cached by the builder and re-built only if bindings change)
+        final SqlStatement sqlStatement = builder.statement();
+
+        if (builder instanceof SqlStatementBuilderImpl) {
+
+            final SqlStatementBuilderImpl impl = (SqlStatementBuilderImpl) builder;
+
+            final Object[] values = impl.slotValues();
+            if (values != null) {
+                final PreparedStatement statement = statement(sqlStatement.sqlStatement());
+                bindSlots(statement, impl.template().inputData(), values, impl.slotPrimitives());
+                return statement;
+            }
+        }
+
+        return prepare(sqlStatement);
+    }
+
+    @Nonnull
+    @Override
+    public PreparedStatement prepare(@Nonnull SqlStatement sqlStatement) throws SQLException {
+
+        final PreparedStatement statement = statement(sqlStatement.sqlStatement());
+
+        final Object[] args = sqlStatement.sqlBindArguments();
+        if (args != null) {
+            for (int i = 0, length = args.length; i < length; i++) {
+                bindValue(statement, i + 1, args[i]);
+            }
+        }
+
+        return statement;
+    }
+
+    @Override
+    public void close() throws SQLException {
+
+        SQLException exception = null;
+
+        for (PreparedStatement statement: mStatements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // close all others, report the first one
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        mStatements.clear();
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Nonnull
+    private PreparedStatement statement(@Nonnull String sql) throws SQLException {
+
+        PreparedStatement statement = mStatements.get(sql);
+
+        if (statement == null) {
+
+            statement = mConnection.prepareStatement(sql);
+            mStatements.put(sql, statement);
+
+            if (mStatements.size() > mMaxStatements) {
+                final Iterator<PreparedStatement> iterator = mStatements.values().iterator();
+                final PreparedStatement eldest = iterator.next();
+                iterator.remove();
+                eldest.close();
+            }
+        }
+
+        return statement;
+    }
+
+    // each slot value is bound to all its positions, primitives are bound without boxing
+    private static void bindSlots(
+            @Nonnull PreparedStatement statement,
+            @Nonnull InputData data,
+            @Nonnull Object[] values,
+            @Nullable long[] primitives) throws SQLException {
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
+
+        Object value;
+
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            value = values[slot];
+            for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                if (value instanceof Primitive) {
+                    //noinspection ConstantConditions
+                    bindPrimitive(statement, bindPositions[i] + 1, (Primitive) value, primitives[slot]);
+                } else {
+                    bindValue(statement, bindPositions[i] + 1, value);
+                }
+            }
+        }
+    }
+
+    private static void bindPrimitive(
+            @Nonnull PreparedStatement statement,
+            int index,
+            @Nonnull Primitive primitive,
+            long bits) throws SQLException {
+        switch (primitive) {
+            case LONG:
+                statement.setLong(index, bits);
+                break;
+            case INT:
+                statement.setInt(index, (int) bits);
+                break;
+            case DOUBLE:
+                statement.setDouble(index, Double.longBitsToDouble(bits));
+                break;
+            case BOOLEAN:
+                statement.setBoolean(index, bits != 0L);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected primitive: " + primitive);
+        }
+    }
+
+    static void bindValue(@Nonnull PreparedStatement statement, int index, @Nullable Object value)
+            throws SQLException {
+
+        if (value == null) {
+            statement.setNull(index, Types.NULL);
+        } else if (value instanceof String) {
+            statement.setString(index, (String) value);
+        } else if (value instanceof Long) {
+            statement.setLong(index, (Long) value);
+        } else if (value instanceof Integer) {
+            statement.setInt(index, (Integer) value);
+        } else if (value instanceof Double) {
+            statement.setDouble(index, (Double) value);
+        } else if (value instanceof Boolean) {
+            statement.setBoolean(index, (Boolean) value);
+        } else if (value instanceof Float) {
+            statement.setFloat(index, (Float) value);
+        } else if (value instanceof Short) {
+            statement.setShort(index, (Short) value);
+        } else if (value instanceof Byte) {
+            statement.setByte(index, (Byte) value);
+        } else if (value instanceof BigDecimal) {
+            statement.setBigDecimal(index, (BigDecimal) value);
+        } else if (value instanceof byte[]) {
+            statement.setBytes(index, (byte[]) value);
+        } else if (value instanceof java.sql.Date) {
+            statement.setDate(index, (java.sql.Date) value);
+        } else if (value instanceof java.sql.Time) {
+            statement.setTime(index, (java.sql.Time) value);
+        } else if (value instanceof Timestamp) {
+            statement.setTimestamp(index, (Timestamp) value);
+        } else if (value instanceof java.util.Date) {
+            statement.setTimestamp(index, new Timestamp(((java.util.Date) value).getTime()));
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+}
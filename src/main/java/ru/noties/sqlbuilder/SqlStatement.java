@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A SQL statement with its binding arguments, obtained via {@link SqlStatementBuilder#statement()}.
+ * Unlike separate {@link SqlStatementBuilder#sqlStatement()} and {@link SqlStatementBuilder#sqlBindArguments()}
+ * calls, both values are guaranteed to belong to the same state of bindings, which matters
+ * if a builder is shared between threads (see {@link SqlStatementBuilder#createConcurrent(String, Locale)}).
+ *
+ * Binding arguments array is shared, it must not be modified
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SqlStatement {
+
+    private final String mSqlStatement;
+    private final Object[] mSqlBindArgs;
+
+    SqlStatement(@Nonnull String sqlStatement, @Nullable Object[] sqlBindArgs) {
+        mSqlStatement = sqlStatement;
+        mSqlBindArgs = sqlBindArgs;
+    }
+
+    /**
+     * @return a SQL statement with all substitutions
+     * @see SqlStatementBuilder#sqlStatement()
+     */
+    @Nonnull
+    public String sqlStatement() {
+        return mSqlStatement;
+    }
+
+    /**
+     * @return an object array of SQL binding arguments or null if there are none
+     * @see SqlStatementBuilder#sqlBindArguments()
+     */
+    @Nullable
+    public Object[] sqlBindArguments() {
+        return mSqlBindArgs;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlStatement{" +
+                "sqlStatement='" + mSqlStatement + '\'' +
+                ", sqlBindArgs=" + Arrays.toString(mSqlBindArgs) +
+                '}';
+    }
+}
@@ -18,6 +18,9 @@ package ru.noties.sqlbuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Locale;
 
 /**
@@ -66,8 +69,15 @@ import java.util.Locale;
  * {@link #create(String)}
  * {@link #create(String, Locale)}
  *
- * This class is not thread safe. There is no any kind of synchronisation. If this class is
- * intended to be used by multiple threads, user of this class must provide own means of synchronisation
+ * If the same input is used repeatedly, a {@link SqlTemplate} can be created once and
+ * used to obtain new builders (via {@link SqlTemplate#newBuilder()}), so input is parsed only once.
+ * Alternatively a {@link SqlTemplateCache} can be installed (via {@link SqlTemplateCache#install(SqlTemplateCache)}),
+ * then these factory methods will obtain templates from it
+ *
+ * Instances created with {@link #create(String)} and {@link #create(String, Locale)} are not thread safe.
+ * There is no any kind of synchronisation. If a builder is intended to be used by multiple threads, one
+ * of {@link #createConcurrent(String)}, {@link #createConcurrent(String, Locale)} factory methods
+ * must be used (or user of this class must provide own means of synchronisation)
  */
 @SuppressWarnings("WeakerAccess")
 public abstract class SqlStatementBuilder {
@@ -87,14 +97,41 @@ public abstract class SqlStatementBuilder {
      * @return an instance of {@link SqlStatementBuilder}
      */
     public static SqlStatementBuilder create(@Nonnull String input, @Nullable Locale locale) {
-        //noinspection ConstantConditions
-        if (input == null) {
-            throw new NullPointerException("`input` string parameter cannot be null");
-        }
-        final Locale outLocale = locale == null
-                ? Locale.US // US is used as default locale for String.format() call (if present)
-                : locale;
-        return new SqlStatementBuilderImpl(input, outLocale);
+        // input is not parsed here (errors are reported lazily), but it will be parsed only once
+        // for this builder. If the same input is used repeatedly consider using SqlTemplate
+        // or installing a SqlTemplateCache
+        final SqlTemplateCache cache = SqlTemplateCache.installed();
+        final SqlTemplateImpl template = cache != null
+                ? cache.obtain(input, locale)
+                : SqlTemplateImpl.lazy(input, locale, false);
+        return template.newBuilder();
+    }
+
+    /**
+     * The same as {@link #createConcurrent(String, Locale)} with `null` as a locale parameter
+     * @see #createConcurrent(String, Locale)
+     */
+    public static SqlStatementBuilder createConcurrent(@Nonnull String input) {
+        return createConcurrent(input, null);
+    }
+
+    /**
+     * Creates a thread safe instance of {@link SqlStatementBuilder}. It can be shared between
+     * threads and bound without any external synchronisation. Each bind call atomically replaces
+     * an immutable snapshot of bindings, a statement is built (once) for a snapshot. In order
+     * to obtain a SQL statement and its binding arguments that belong to the same snapshot
+     * {@link #statement()} must be used.
+     *
+     * Please note that a sequence of calls (for example, by a {@link Visitor}) is not atomic
+     * @see #create(String, Locale)
+     * @see SqlTemplate#newConcurrentBuilder()
+     */
+    public static SqlStatementBuilder createConcurrent(@Nonnull String input, @Nullable Locale locale) {
+        final SqlTemplateCache cache = SqlTemplateCache.installed();
+        final SqlTemplateImpl template = cache != null
+                ? cache.obtain(input, locale)
+                : SqlTemplateImpl.lazy(input, locale, false);
+        return template.newConcurrentBuilder();
     }
 
     /**
@@ -127,10 +164,171 @@ public abstract class SqlStatementBuilder {
     public abstract SqlStatementBuilder bind(@Nonnull String name, @Nullable Object value);
 
     /**
-     * Clears all bindings, that were previously bound by {@link #bind(String, Object)} calls
+     * The same as {@link #bind(String, Object)}, but uses a slot of a named argument
+     * instead of its name, so no name lookup is involved
+     * @param slot of the parameter to be bound (obtained via {@link SqlTemplate#slot(String)})
+     * @param value value of the binding argument
+     * @return self to chain calls
+     * @throws IllegalArgumentException if there is no named argument with specified slot
+     * @throws IllegalStateException if there was an error parsing the input
+     * @see SqlTemplate#slot(String)
+     */
+    public abstract SqlStatementBuilder bind(int slot, @Nullable Object value)
+            throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * Binds a `long` value without boxing it (if supported by the implementation, otherwise
+     * the same as {@link #bind(String, Object)})
+     * @param name of the parameter to be bound
+     * @param value value of the binding argument
+     * @return self to chain calls
+     */
+    public SqlStatementBuilder bindLong(@Nonnull String name, long value) {
+        return bind(name, (Object) value);
+    }
+
+    /**
+     * @see #bindLong(String, long)
+     * @see #bind(int, Object)
+     */
+    public SqlStatementBuilder bindLong(int slot, long value)
+            throws IllegalArgumentException, IllegalStateException {
+        return bind(slot, (Object) value);
+    }
+
+    /**
+     * Binds a `int` value without boxing it (if supported by the implementation, otherwise
+     * the same as {@link #bind(String, Object)})
+     * @param name of the parameter to be bound
+     * @param value value of the binding argument
+     * @return self to chain calls
+     */
+    public SqlStatementBuilder bindInt(@Nonnull String name, int value) {
+        return bind(name, (Object) value);
+    }
+
+    /**
+     * @see #bindInt(String, int)
+     * @see #bind(int, Object)
+     */
+    public SqlStatementBuilder bindInt(int slot, int value)
+            throws IllegalArgumentException, IllegalStateException {
+        return bind(slot, (Object) value);
+    }
+
+    /**
+     * Binds a `double` value without boxing it (if supported by the implementation, otherwise
+     * the same as {@link #bind(String, Object)})
+     * @param name of the parameter to be bound
+     * @param value value of the binding argument
+     * @return self to chain calls
+     */
+    public SqlStatementBuilder bindDouble(@Nonnull String name, double value) {
+        return bind(name, (Object) value);
+    }
+
+    /**
+     * @see #bindDouble(String, double)
+     * @see #bind(int, Object)
+     */
+    public SqlStatementBuilder bindDouble(int slot, double value)
+            throws IllegalArgumentException, IllegalStateException {
+        return bind(slot, (Object) value);
+    }
+
+    /**
+     * Binds a `boolean` value without boxing it (if supported by the implementation, otherwise
+     * the same as {@link #bind(String, Object)})
+     * @param name of the parameter to be bound
+     * @param value value of the binding argument
+     * @return self to chain calls
+     */
+    public SqlStatementBuilder bindBoolean(@Nonnull String name, boolean value) {
+        return bind(name, (Object) value);
+    }
+
+    /**
+     * @see #bindBoolean(String, boolean)
+     * @see #bind(int, Object)
+     */
+    public SqlStatementBuilder bindBoolean(int slot, boolean value)
+            throws IllegalArgumentException, IllegalStateException {
+        return bind(slot, (Object) value);
+    }
+
+    /**
+     * Adds values currently bound to arguments of the repeated group `*{}` as a new row and
+     * un-binds them, so arguments for the next row can be bound. For example:
+     * {@code insert into users(name, age) values *{(?{name}, ?{age})}} with 2 rows
+     * becomes {@code insert into users(name, age) values (?, ?), (?, ?)}. If no rows are added,
+     * the group is rendered once with currently bound values
+     * @return a `this` instance for chaining calls
+     * @throws IllegalStateException if input has no repeated group or if some of the group
+     * arguments are not bound
+     */
+    public abstract SqlStatementBuilder addRow() throws IllegalStateException;
+
+    /**
+     * Clears all bindings, that were previously bound by {@link #bind(String, Object)}
+     * or {@link #bind(int, Object)} calls, and rows added by {@link #addRow()}
      */
     public abstract void clearBindings();
 
+    /**
+     * Appends a SQL statement with all substitutions to the supplied builder. Unlike
+     * {@link #sqlStatement()} might not create an intermediate String
+     * @param builder to append to
+     * @throws IllegalStateException if there was an error parsing/preparing the SQL statement
+     */
+    public void renderTo(@Nonnull StringBuilder builder) throws IllegalStateException {
+        builder.append(sqlStatement());
+    }
+
+    /**
+     * Appends a SQL statement with all substitutions to the supplied appendable. Statement is
+     * rendered into a per-thread reusable buffer first (unless appendable is a StringBuilder)
+     * @param appendable to append to
+     * @throws IOException if appendable throws
+     * @throws IllegalStateException if there was an error parsing/preparing the SQL statement
+     * @throws java.nio.BufferOverflowException if appendable is a {@link CharBuffer} without enough space
+     * @see #renderTo(StringBuilder)
+     */
+    public void renderTo(@Nonnull Appendable appendable) throws IOException, IllegalStateException {
+
+        if (appendable instanceof StringBuilder) {
+            renderTo((StringBuilder) appendable);
+            return;
+        }
+
+        final StringBuilder builder = Buffers.acquire();
+        try {
+            renderTo(builder);
+            if (appendable instanceof CharBuffer) {
+                Buffers.put(builder, (CharBuffer) appendable);
+            } else {
+                appendable.append(builder);
+            }
+        } finally {
+            Buffers.release(builder);
+        }
+    }
+
+    /**
+     * Writes a SQL statement with all substitutions encoded as UTF-8 to the supplied buffer
+     * @param buffer to write to
+     * @throws IllegalStateException if there was an error parsing/preparing the SQL statement
+     * @throws java.nio.BufferOverflowException if buffer has not enough space (its position is not changed)
+     */
+    public void renderTo(@Nonnull ByteBuffer buffer) throws IllegalStateException {
+        final StringBuilder builder = Buffers.acquire();
+        try {
+            renderTo(builder);
+            Buffers.encode(builder, buffer);
+        } finally {
+            Buffers.release(builder);
+        }
+    }
+
     /**
      * @return a SQL statement with all substitutions. If there are no named arguments the `input`
      *      string will be returned without modification (passed to {@link #create(String)} call)
@@ -144,6 +342,27 @@ public abstract class SqlStatementBuilder {
      */
     public abstract Object[] sqlBindArguments() throws IllegalStateException;
 
+    /**
+     * @return a {@link SqlStatement} that holds both SQL statement and its binding arguments
+     * @throws IllegalStateException if there was an error parsing/preparing the SQL statement
+     * @see #sqlStatement()
+     * @see #sqlBindArguments()
+     */
+    @Nonnull
+    public abstract SqlStatement statement() throws IllegalStateException;
+
+    /**
+     * Creates a {@link SqlBatch} from current bindings. All format arguments (`${}`) must be bound,
+     * SQL binding arguments (`?{}`) that are bound are used as default values for each row.
+     * Subsequent changes to this builder do not affect created batch
+     * @return a new instance of {@link SqlBatch}
+     * @throws IllegalStateException if there was an error parsing/preparing the SQL statement or
+     * if a collection or an array is bound to a SQL binding argument (it cannot be expanded for a batch)
+     * @see SqlBatch
+     */
+    @Nonnull
+    public abstract SqlBatch batch() throws IllegalStateException;
+
     /**
      * @param visitor non-null visitor
      * @return a `this` instance for chaining calls
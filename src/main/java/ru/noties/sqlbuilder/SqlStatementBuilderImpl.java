@@ -18,185 +18,1043 @@ package ru.noties.sqlbuilder;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.Locale;
-import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 class SqlStatementBuilderImpl extends SqlStatementBuilder {
 
-    private final String mInput;
-    private final Locale mLocale;
+    private final SqlTemplateImpl mTemplate;
 
-    private String mSqlStatement;
-    private Object[] mSqlBindArgs;
-    private Map<String, Object> mArgumentsMap;
+    // last built statement, when bindings change only affected parts are re-built
+    private SqlStatement mStatement;
 
-    private boolean mChanged;
+    // values of arguments by their slots (ids of arguments in InputData), created on first bind.
+    // `clearBindings` keeps immutable values, so the same value bound again does not trigger re-building
+    private Object[] mValues;
 
-    SqlStatementBuilderImpl(@Nonnull String input, @Nonnull Locale locale) {
-        mInput = input;
-        mLocale = locale;
-        mChanged = true; // initial value
+    // bits of values bound with primitive overloads (`mValues` contains a Primitive marker for them),
+    // created on first primitive bind
+    private long[] mPrimitives;
+    private boolean[] mBound;
+    private int mBoundLength;
+
+    // names that were bound, but are not present in the input (will be reported as an error)
+    private Set<String> mNotPresent;
+
+    // rows of repeated group added with `addRow` (values of group bind arguments in order of appearance)
+    private List<Object[]> mRows;
+
+    // what has changed since `mStatement` was built:
+    //  * set of bound arguments (requires validation only)
+    //  * a value of a format argument (statement must be rendered again)
+    //  * a value of a bind argument (only affected elements of bind arguments must be updated)
+    private boolean mBindingsChanged;
+    private boolean mFormatChanged;
+    private boolean mBindChanged;
+    private boolean[] mBindDirty;
+
+    // number of bind arguments that have a collection or an array value (expanded to `?, ?, ?`).
+    // If there are such, positions of bind arguments might change, so statement is always fully re-built
+    private int mExpandable;
+
+    private boolean mPooled;
+
+    SqlStatementBuilderImpl(@Nonnull SqlTemplateImpl template) {
+        mTemplate = template;
     }
 
     @Override
     public SqlStatementBuilder bind(@Nonnull String name, @Nullable Object value) {
-        if (mArgumentsMap == null) {
-            mArgumentsMap = new HashMap<>(3);
+        final int slot = slot(name);
+        if (slot != -1) {
+            store(mTemplate.inputData(), slot, value, 0L);
         }
-        mChanged = true;
-        mArgumentsMap.put(name, value);
         return this;
     }
 
-    // okay, the thing is... if we have formatArgs, we might need to construct a new sqlString
-    // if not, we might skip it and re-use
+    @Override
+    public SqlStatementBuilder bind(int slot, @Nullable Object value) {
+        store(checkSlot(slot), slot, value, 0L);
+        return this;
+    }
 
     @Override
-    public String sqlStatement() {
+    public SqlStatementBuilder bindLong(@Nonnull String name, long value) {
+        final int slot = slot(name);
+        if (slot != -1) {
+            store(mTemplate.inputData(), slot, Primitive.LONG, value);
+        }
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bindLong(int slot, long value) {
+        store(checkSlot(slot), slot, Primitive.LONG, value);
+        return this;
+    }
 
-        if (mChanged) {
-            bind();
+    @Override
+    public SqlStatementBuilder bindInt(@Nonnull String name, int value) {
+        final int slot = slot(name);
+        if (slot != -1) {
+            store(mTemplate.inputData(), slot, Primitive.INT, value);
         }
+        return this;
+    }
 
-        return mSqlStatement;
+    @Override
+    public SqlStatementBuilder bindInt(int slot, int value) {
+        store(checkSlot(slot), slot, Primitive.INT, value);
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bindDouble(@Nonnull String name, double value) {
+        final int slot = slot(name);
+        if (slot != -1) {
+            store(mTemplate.inputData(), slot, Primitive.DOUBLE, Double.doubleToRawLongBits(value));
+        }
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bindDouble(int slot, double value) {
+        store(checkSlot(slot), slot, Primitive.DOUBLE, Double.doubleToRawLongBits(value));
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bindBoolean(@Nonnull String name, boolean value) {
+        final int slot = slot(name);
+        if (slot != -1) {
+            store(mTemplate.inputData(), slot, Primitive.BOOLEAN, value ? 1L : 0L);
+        }
+        return this;
+    }
+
+    @Override
+    public SqlStatementBuilder bindBoolean(int slot, boolean value) {
+        store(checkSlot(slot), slot, Primitive.BOOLEAN, value ? 1L : 0L);
+        return this;
+    }
+
+    // returns -1 if input is malformed or has no argument with specified name
+    private int slot(@Nonnull String name) {
+
+        mBindingsChanged = true;
+
+        final InputData data = mTemplate.inputDataOrNull();
+        if (data == null) {
+            // input is malformed, an exception will be thrown when statement is requested
+            return -1;
+        }
+
+        final int slot = data.argumentId(name);
+        if (slot == -1) {
+            if (mNotPresent == null) {
+                mNotPresent = new LinkedHashSet<>(3);
+            }
+            mNotPresent.add(name);
+        }
+
+        return slot;
+    }
+
+    @Nonnull
+    private InputData checkSlot(int slot) {
+        final InputData data = mTemplate.inputData();
+        if (slot < 0 || slot >= data.argsLength()) {
+            throw new IllegalArgumentException("Invalid slot: `" + slot + "`, input has `" +
+                    data.argsLength() + "` named arguments. Input: `" + mTemplate.input() + "`");
+        }
+        return data;
+    }
+
+    // `bits` are used only if value is a Primitive marker
+    private void store(@Nonnull InputData data, int slot, @Nullable Object value, long bits) {
+
+        final SqlTemplateMetricsImpl metrics = mTemplate.metrics();
+        if (metrics != null) {
+            metrics.increment(SqlTemplateMetrics.Counter.BINDS);
+        }
+
+        if (mValues == null) {
+            final int length = data.argsLength();
+            mValues = new Object[length];
+            mBound = new boolean[length];
+            mBindDirty = new boolean[length];
+        }
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final boolean isBind = bindOffsets[slot] != bindOffsets[slot + 1];
+
+        if (isGroupArg(data, slot)) {
+            checkNotExpandable(mTemplate, data, slot, value, "an argument of repeated group");
+        }
+
+        if (isBind && !isGroupArg(data, slot)) {
+
+            final boolean was = expandable(mValues[slot]);
+            final boolean is = expandable(value);
+
+            if (was) {
+                mExpandable -= 1;
+            }
+
+            if (is) {
+                mExpandable += 1;
+            }
+
+            // a collection can be modified, so even the same instance triggers re-building
+            if (was || is) {
+                invalidate();
+            }
+        }
+
+        if (value instanceof Primitive && mPrimitives == null) {
+            mPrimitives = new long[data.argsLength()];
+        }
+
+        // primitives are compared by their values
+        final boolean changed = mValues[slot] != value
+                || (value instanceof Primitive && mPrimitives[slot] != bits);
+
+        if (mStatement != null) {
+
+            // a mutable value (for example a StringBuilder) can be modified and bound again,
+            // so only the same immutable value does not require rendering
+            final int[] formatOffsets = data.formatArgOffsets();
+            if (formatOffsets[slot] != formatOffsets[slot + 1]
+                    && (changed || !immutable(value))) {
+                mFormatChanged = true;
+            }
+
+            // bind arguments hold a reference to the value itself
+            if (isBind && changed) {
+                if (mExpandable > 0) {
+                    invalidate();
+                } else {
+                    mBindChanged = true;
+                    mBindDirty[slot] = true;
+                }
+            }
+        }
+
+        mValues[slot] = value;
+
+        if (value instanceof Primitive) {
+            mPrimitives[slot] = bits;
+        }
+
+        if (!mBound[slot]) {
+            mBound[slot] = true;
+            mBoundLength += 1;
+            mBindingsChanged = true;
+        }
+    }
+
+    @Override
+    public String sqlStatement() {
+        return statement().sqlStatement();
     }
 
     @Override
     public Object[] sqlBindArguments() {
+        return statement().sqlBindArguments();
+    }
+
+    @Nonnull
+    @Override
+    public SqlStatement statement() {
+
+        final SqlStatement statement = mStatement;
+
+        if (statement == null) {
+            mStatement = build(mTemplate, mValues, mPrimitives, mBound, mBoundLength, mNotPresent, mRows);
+        } else if (mBindingsChanged || mFormatChanged || mBindChanged) {
 
-        if (mChanged) {
-            bind();
+            validate(mTemplate, mBound, mBoundLength, mNotPresent, rows(mRows));
+
+            if (mFormatChanged || mBindChanged) {
+                mStatement = rebuild(statement);
+            }
         }
 
-        return mSqlBindArgs;
+        mBindingsChanged = false;
+        mFormatChanged = false;
+        mBindChanged = false;
+
+        return mStatement;
     }
 
-    private void bind() {
+    @Override
+    public void renderTo(@Nonnull StringBuilder builder) {
 
-        final InputData data = InputData.create(mInput);
+        final SqlStatement statement = mStatement;
 
-        // next detect if we need to `string.format` input
-        final int argsLength = data.argsLength();
+        // SQL statement is not affected by changes of bind arguments (collections
+        // invalidate the statement), so it can be appended as is
+        if (statement != null && !mFormatChanged) {
+            if (mBindingsChanged) {
+                validate(mTemplate, mBound, mBoundLength, mNotPresent, rows(mRows));
+            }
+            builder.append(statement.sqlStatement());
+            return;
+        }
+
+        validate(mTemplate, mBound, mBoundLength, mNotPresent, rows(mRows));
+
+        final InputData data = mTemplate.inputData();
+
+        if (data.argsLength() == 0) {
+            builder.append(mTemplate.input());
+            return;
+        }
+
+        final int rowsLength = Math.max(1, rows(mRows));
+        final int[] bindCounts = bindCounts(mTemplate, mValues);
+
+        if (data.formatArgsLength() > 0) {
+            mTemplate.renderTo(
+                    builder,
+                    formatArgs(data, mValues),
+                    formatPrimitives(data, mValues, mPrimitives),
+                    rowsLength,
+                    bindCounts);
+        } else {
+            builder.append(data.formattedInput(rowsLength, bindCounts));
+        }
+    }
+
+    @Nonnull
+    SqlTemplateImpl template() {
+        return mTemplate;
+    }
+
+    // set when released to the pool of the template, guards from releasing twice. Pool publishes
+    // builders via CAS, so there is no need in volatile
+    boolean pooled() {
+        return mPooled;
+    }
+
+    void pooled(boolean pooled) {
+        mPooled = pooled;
+    }
+
+    // called before a builder is put to the pool of the template (which usually lives as long as
+    // the application), so it must not reference any values. Arrays are kept for the next use
+    void recycle() {
+        mStatement = null;
+        if (mValues != null) {
+            Arrays.fill(mValues, null);
+            Arrays.fill(mBound, false);
+            Arrays.fill(mBindDirty, false);
+        }
+        if (mPrimitives != null) {
+            Arrays.fill(mPrimitives, 0L);
+        }
+        mBoundLength = 0;
+        mNotPresent = null;
+        mRows = null;
+        mExpandable = 0;
+        mBindingsChanged = true;
+        mFormatChanged = false;
+        mBindChanged = false;
+    }
+
+    // values by slots if each bind argument can be mapped directly to a value of its slot
+    // (there are no rows of repeated group and no expanded collections), null otherwise.
+    // Must be called after `statement()`, so bindings are validated. A value can be a Primitive
+    // marker, then its bits are in `slotPrimitives()`
+    @Nullable
+    Object[] slotValues() {
+        return mExpandable == 0 && rows(mRows) == 0
+                ? mValues
+                : null;
+    }
+
+    @Nullable
+    long[] slotPrimitives() {
+        return mPrimitives;
+    }
+
+    @Nonnull
+    private SqlStatement rebuild(@Nonnull SqlStatement statement) {
+
+        final InputData data = mTemplate.inputData();
+
+        final String sqlStatement = mFormatChanged
+                ? mTemplate.render(
+                        formatArgs(data, mValues),
+                        formatPrimitives(data, mValues, mPrimitives),
+                        Math.max(1, rows(mRows)),
+                        bindCounts(mTemplate, mValues))
+                : statement.sqlStatement();
+
+        final long start = mTemplate.metrics() != null ? System.nanoTime() : 0L;
+
+        //noinspection ConstantConditions
+        final Object[] sqlBindArgs = mBindChanged
+                ? updateBindArgs(data, statement.sqlBindArguments())
+                : statement.sqlBindArguments();
+
+        record(mTemplate, start, sqlStatement);
+
+        return new SqlStatement(sqlStatement, sqlBindArgs);
+    }
+
+    @Override
+    public SqlStatementBuilder addRow() {
+
+        final Object[] row = row(mTemplate, mValues, mPrimitives, mBound);
+
+        if (mRows == null) {
+            mRows = new ArrayList<>();
+        }
+        mRows.add(row);
+
+        // group arguments are bound for the next row
+        final InputData data = mTemplate.inputData();
+        for (int slot = data.groupArgsStart(), end = data.groupArgsEnd(); slot < end; slot++) {
+            mBound[slot] = false;
+            mBoundLength -= 1;
+        }
+
+        // length of statement and positions of bind arguments have changed
+        invalidate();
+
+        return this;
+    }
+
+    // statement will be fully re-built
+    private void invalidate() {
+        mStatement = null;
+        mBindingsChanged = true;
+        if (mBindDirty != null) {
+            Arrays.fill(mBindDirty, false);
+        }
+    }
+
+    // creates a row from values currently bound to arguments of the repeated group
+    @Nonnull
+    static Object[] row(
+            @Nonnull SqlTemplateImpl template,
+            @Nullable Object[] values,
+            @Nullable long[] primitives,
+            @Nullable boolean[] bound) {
+
+        final InputData data = template.inputData();
+
+        final int groupStart = data.groupBindArgsStart();
+        final int groupLength = data.groupBindArgsLength();
+
+        if (groupLength == 0) {
+            throw new IllegalStateException("Input has no repeated group `*{}`, rows cannot be added. " +
+                    "Input: `" + template.input() + "`");
+        }
+
+        Set<String> notBound = null;
+        for (int slot = data.groupArgsStart(), end = data.groupArgsEnd(); slot < end; slot++) {
+            if (bound == null || !bound[slot]) {
+                if (notBound == null) {
+                    notBound = new LinkedHashSet<>(3);
+                }
+                notBound.add(data.argumentName(slot));
+            }
+        }
+
+        if (notBound != null) {
+            throw new IllegalStateException("Some arguments of repeated group are not bound for a row: `" +
+                    notBound + "`. Input: `" + template.input() + "`");
+        }
+
+        final Object[] row = new Object[groupLength];
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
+
+        for (int slot = data.groupArgsStart(), end = data.groupArgsEnd(); slot < end; slot++) {
+            for (int i = bindOffsets[slot], length = bindOffsets[slot + 1]; i < length; i++) {
+                //noinspection ConstantConditions
+                row[bindPositions[i] - groupStart] = Primitive.value(values[slot], primitives, slot);
+            }
+        }
+
+        return row;
+    }
+
+    private static int rows(@Nullable List<Object[]> rows) {
+        return rows == null
+                ? 0
+                : rows.size();
+    }
+
+    @Nonnull
+    @Override
+    public SqlBatch batch() {
+        return batch(mTemplate, mValues, mPrimitives, mBound, mNotPresent, mRows);
+    }
+
+    @Nonnull
+    static SqlBatch batch(
+            @Nonnull SqlTemplateImpl template,
+            @Nullable Object[] values,
+            @Nullable long[] primitives,
+            @Nullable boolean[] bound,
+            @Nullable Set<String> notPresent,
+            @Nullable List<Object[]> rows) {
+
+        if (rows(rows) > 0) {
+            throw new IllegalStateException("Rows of repeated group cannot be used with a batch, " +
+                    "bind group arguments for each batch row instead. Input: `" + template.input() + "`");
+        }
+
+        SqlBatchImpl.validate(template, bound, notPresent);
+
+        final InputData data = template.inputData();
+
+        if (values != null) {
+            final int[] bindOffsets = data.bindArgOffsets();
+            for (int slot = 0, length = values.length; slot < length; slot++) {
+                if (bindOffsets[slot] != bindOffsets[slot + 1]) {
+                    checkNotExpandable(template, data, slot, values[slot], "an argument of a batch");
+                }
+            }
+        }
 
         final String sqlStatement;
-        final Object[] sqlBindArgs;
+        if (data.argsLength() == 0) {
+            sqlStatement = template.input();
+        } else if (data.formatArgsLength() > 0) {
+            //noinspection ConstantConditions
+            sqlStatement = template.render(formatArgs(data, values), formatPrimitives(data, values, primitives), 1, null);
+        } else {
+            sqlStatement = data.formattedInput();
+        }
 
-        // if we have none, just return unmodified
-        if (argsLength == 0) {
+        // batch rows hold objects
+        return new SqlBatchImpl(template, sqlStatement, boxed(values, primitives), bound);
+    }
 
-            // we just need to validate that our bindArgsMap is null or empty
-            if (mArgumentsMap != null && mArgumentsMap.size() > 0) {
+    // copies previous bind arguments and updates only changed elements. Previous array is copied
+    // as it might be still referenced by a caller
+    @Nonnull
+    private Object[] updateBindArgs(@Nonnull InputData data, @Nonnull Object[] previous) {
 
-                throw new IllegalStateException("Input string has no named arguments, but `bind` method was " +
-                        "called. Most likely there was an error constructing an input string: `" +
-                        mInput + "`");
+        final Object[] bindArgs = previous.clone();
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
+
+        final Object[] values = mValues;
+        final boolean[] dirty = mBindDirty;
 
+        // if rows were added, arguments after the group are shifted (group arguments
+        // cannot be changed in this case, as they must not be bound)
+        final int groupEnd = data.groupBindArgsStart() + data.groupBindArgsLength();
+        final int shift = Math.max(0, rows(mRows) - 1) * data.groupBindArgsLength();
+
+        Object value;
+        int position;
+
+        for (int slot = 0, length = dirty.length; slot < length; slot++) {
+            if (dirty[slot]) {
+                value = Primitive.value(values[slot], mPrimitives, slot);
+                for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                    position = bindPositions[i];
+                    bindArgs[position >= groupEnd ? position + shift : position] = value;
+                }
+                dirty[slot] = false;
             }
+        }
+
+        return bindArgs;
+    }
+
+    // validates bound arguments and creates a statement. Does not modify passed arrays, so
+    // can be used by ConcurrentSqlStatementBuilderImpl also
+    @Nonnull
+    static SqlStatement build(
+            @Nonnull SqlTemplateImpl template,
+            @Nullable Object[] values,
+            @Nullable long[] primitives,
+            @Nullable boolean[] bound,
+            int boundLength,
+            @Nullable Set<String> notPresent,
+            @Nullable List<Object[]> rows) {
+
+        validate(template, bound, boundLength, notPresent, rows(rows));
+
+        // parsed only once per template, all subsequent calls return cached value
+        final InputData data = template.inputData();
+
+        // if we have none, just return unmodified
+        if (data.argsLength() == 0) {
+            return new SqlStatement(template.input(), null);
+        }
+
+        // repeated group is rendered once if no rows were added explicitly
+        final int rowsLength = Math.max(1, rows(rows));
 
-            sqlStatement = mInput;
-            sqlBindArgs = null;
+        // null if there are no collections/arrays bound
+        final int[] bindCounts = bindCounts(template, values);
+
+        final String sqlStatement;
 
+        if (data.formatArgsLength() > 0) {
+            //noinspection ConstantConditions
+            sqlStatement = template.render(
+                    formatArgs(data, values),
+                    formatPrimitives(data, values, primitives),
+                    rowsLength,
+                    bindCounts);
         } else {
+            // this call can be cached by InputData for example
+            sqlStatement = data.formattedInput(rowsLength, bindCounts);
+        }
+
+        final long start = template.metrics() != null ? System.nanoTime() : 0L;
+
+        //noinspection ConstantConditions
+        final Object[] sqlBindArgs = bindArgs(data, values, primitives, rows, bindCounts);
+
+        record(template, start, sqlStatement);
+
+        return new SqlStatement(sqlStatement, sqlBindArgs);
+    }
+
+    private static void record(@Nonnull SqlTemplateImpl template, long bindArgsStart, @Nonnull String sqlStatement) {
+        final SqlTemplateMetricsImpl metrics = template.metrics();
+        if (metrics == null) {
+            return;
+        }
+        metrics.record(SqlTemplateMetrics.Timer.BIND_ARGUMENTS, System.nanoTime() - bindArgsStart);
+        metrics.increment(SqlTemplateMetrics.Counter.STATEMENTS);
+        metrics.add(SqlTemplateMetrics.Counter.STATEMENT_LENGTH, sqlStatement.length());
+    }
+
+    // a collection or an array (except primitive ones, for example `byte[]` is a valid single value)
+    // is expanded to a `?` for each of its elements
+    static boolean expandable(@Nullable Object value) {
+        return value instanceof Collection
+                || value instanceof Object[];
+    }
+
+    // values whose string form cannot change, Primitive markers are compared by their bits
+    static boolean immutable(@Nullable Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Primitive
+                || value instanceof Long
+                || value instanceof Integer
+                || value instanceof Short
+                || value instanceof Byte
+                || value instanceof Double
+                || value instanceof Float
+                || value instanceof Boolean
+                || value instanceof Character;
+    }
+
+    static boolean isGroupArg(@Nonnull InputData data, int slot) {
+        return slot >= data.groupArgsStart() && slot < data.groupArgsEnd();
+    }
+
+    // collections and arrays are expanded only for regular SQL binding arguments. Rows of a repeated
+    // group and of a batch share placeholders, so such a value would be silently bound as a single one
+    static void checkNotExpandable(
+            @Nonnull SqlTemplateImpl template,
+            @Nonnull InputData data,
+            int slot,
+            @Nullable Object value,
+            @Nonnull String argument) {
+        if (expandable(value)) {
+            throw new IllegalStateException("Collection or array cannot be bound to " + argument + ": `" +
+                    data.argumentName(slot) + "`. Input: `" + template.input() + "`");
+        }
+    }
+
+    // size of expanded value is rounded up to a power of two (the last element is repeated),
+    // so there are only a few distinct SQL statements for lists of different sizes (which
+    // keeps hitting prepared statements caches of a driver and a database)
+    static int bucket(int size) {
+        return size <= 1
+                ? 1
+                : Integer.highestOneBit(size - 1) << 1;
+    }
 
-            final int boundArgsLength = mArgumentsMap == null
-                    ? 0
-                    : mArgumentsMap.size();
+    private static int size(@Nonnull Object value) {
+        return value instanceof Collection
+                ? ((Collection<?>) value).size()
+                : ((Object[]) value).length;
+    }
+
+    // returns number of `?` for each bind argument or null if there are no expandable values.
+    // Arguments of repeated group are not expanded
+    @Nullable
+    private static int[] bindCounts(@Nonnull SqlTemplateImpl template, @Nullable Object[] values) {
+
+        if (values == null) {
+            return null;
+        }
+
+        final InputData data = template.inputData();
 
-            if (boundArgsLength == 0) {
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
 
-                throw new IllegalStateException("Input string has named arguments, but they are not " +
-                        "bound. Please make sure to bind all named arguments. Input: `" +
-                        mInput + "`, expected arguments: `" + data.argumentNames() + "`");
+        int[] bindCounts = null;
 
-            } else if (boundArgsLength != argsLength) {
+        Object value;
+        int size;
 
-                // bound arguments mismatch
-                // let's detect what arguments were not bound
-                throw mismatchException(mInput, data, mArgumentsMap);
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+
+            value = values[slot];
+
+            if (!expandable(value)
+                    || bindOffsets[slot] == bindOffsets[slot + 1]
+                    || isGroupArg(data, slot)) {
+                continue;
             }
 
-            // okay, what we do here is:
-            // if we have
+            size = size(value);
+            if (size == 0) {
+                // `in ()` is not valid SQL
+                throw new IllegalStateException("Empty collection cannot be bound: `" +
+                        data.argumentName(slot) + "`. Input: `" + template.input() + "`");
+            }
 
-            final int formatArgsLength  = data.formatArgsLength();
-            final int bindArgsLength    = data.bindArgsLength();
+            if (bindCounts == null) {
+                bindCounts = new int[data.bindArgsLength()];
+                Arrays.fill(bindCounts, 1);
+            }
 
-            final Object[] formatArgs = formatArgsLength > 0
-                    ? new Object[formatArgsLength]
-                    : null;
+            for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                bindCounts[bindPositions[i]] = bucket(size);
+            }
+        }
 
-            final Object[] bindArgs = bindArgsLength > 0
-                    ? new Object[bindArgsLength]
-                    : null;
+        return bindCounts;
+    }
 
-            String key;
-            Object value;
+    private static void validate(
+            @Nonnull SqlTemplateImpl template,
+            @Nullable boolean[] bound,
+            int boundLength,
+            @Nullable Set<String> notPresent,
+            int rows) {
 
-            int formatAdded = 0;
-            int bindAdded = 0;
+        final InputData data = template.inputData();
+        final String input = template.input();
 
-            for (Map.Entry<String, Object> entry: mArgumentsMap.entrySet()) {
+        final int argsLength = data.argsLength();
 
-                key = entry.getKey();
-                value = entry.getValue();
+        if (rows > 0) {
 
-                for (int formatIndex: data.formatArgIndexes(key)) {
-                    //noinspection ConstantConditions
-                    formatArgs[formatIndex] = value;
-                    formatAdded += 1;
+            // arguments of the repeated group are taken from the rows, so they must not be bound
+            for (int slot = data.groupArgsStart(), end = data.groupArgsEnd(); slot < end; slot++) {
+                //noinspection ConstantConditions
+                if (bound[slot]) {
+                    throw new IllegalStateException("Arguments of repeated group are bound, but not added " +
+                            "as a row with `addRow()`: `" + data.argumentName(slot) + "`. Input: `" + input + "`");
                 }
+            }
+
+            boundLength += data.groupArgsEnd() - data.groupArgsStart();
+        }
+
+        final int notPresentLength = notPresent == null
+                ? 0
+                : notPresent.size();
+
+        if (argsLength == 0) {
+
+            // we just need to validate that nothing was bound
+            if (notPresentLength > 0) {
 
-                for (int bindIndex: data.bindArgIndexes(key)) {
-                    //noinspection ConstantConditions
-                    bindArgs[bindIndex] = value;
-                    bindAdded += 1;
+                throw new IllegalStateException("Input string has no named arguments, but `bind` method was " +
+                        "called. Most likely there was an error constructing an input string: `" +
+                        input + "`");
+
+            }
+
+        } else if (boundLength + notPresentLength == 0) {
+
+            throw new IllegalStateException("Input string has named arguments, but they are not " +
+                    "bound. Please make sure to bind all named arguments. Input: `" +
+                    input + "`, expected arguments: `" + data.argumentNames() + "`");
+
+        } else if (notPresentLength > 0 || boundLength != argsLength) {
+
+            // bound arguments mismatch
+            // let's detect what arguments were not bound
+            throw mismatchException(input, data, bound, notPresent, rows);
+        }
+    }
+
+    @Nonnull
+    private static Object[] formatArgs(@Nonnull InputData data, @Nonnull Object[] values) {
+
+        final Object[] formatArgs = new Object[data.formatArgsLength()];
+
+        final int[] formatOffsets = data.formatArgOffsets();
+        final int[] formatPositions = data.formatArgPositions();
+
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            for (int i = formatOffsets[slot], end = formatOffsets[slot + 1]; i < end; i++) {
+                formatArgs[formatPositions[i]] = values[slot];
+            }
+        }
+
+        return formatArgs;
+    }
+
+    // bits of primitive format arguments (by format argument index) or null if there are none
+    @Nullable
+    private static long[] formatPrimitives(
+            @Nonnull InputData data,
+            @Nullable Object[] values,
+            @Nullable long[] primitives) {
+
+        if (values == null || primitives == null) {
+            return null;
+        }
+
+        final int[] formatOffsets = data.formatArgOffsets();
+        final int[] formatPositions = data.formatArgPositions();
+
+        long[] formatPrimitives = null;
+
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            if (values[slot] instanceof Primitive) {
+                for (int i = formatOffsets[slot], end = formatOffsets[slot + 1]; i < end; i++) {
+                    if (formatPrimitives == null) {
+                        formatPrimitives = new long[data.formatArgsLength()];
+                    }
+                    formatPrimitives[formatPositions[i]] = primitives[slot];
                 }
             }
+        }
+
+        return formatPrimitives;
+    }
+
+    @Nullable
+    private static Object[] boxed(@Nullable Object[] values, @Nullable long[] primitives) {
+
+        if (values == null || primitives == null) {
+            return values;
+        }
+
+        final Object[] out = new Object[values.length];
+        for (int slot = 0, length = values.length; slot < length; slot++) {
+            out[slot] = Primitive.value(values[slot], primitives, slot);
+        }
+        return out;
+    }
+
+    @Nullable
+    private static Object[] bindArgs(
+            @Nonnull InputData data,
+            @Nonnull Object[] values,
+            @Nullable long[] primitives,
+            @Nullable List<Object[]> rows,
+            @Nullable int[] bindCounts) {
+
+        final int bindArgsLength = data.bindArgsLength();
+        if (bindArgsLength == 0) {
+            return null;
+        }
+
+        if (rows(rows) > 0 || bindCounts != null) {
+            return expandBindArgs(data, values, primitives, rows, bindCounts);
+        }
+
+        final Object[] bindArgs = new Object[bindArgsLength];
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
 
-            if (formatAdded != formatArgsLength
-                    || bindAdded != bindArgsLength) {
-                throw mismatchException(mInput, data, mArgumentsMap);
+        Object value;
+
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            if (bindOffsets[slot] == bindOffsets[slot + 1]) {
+                continue;
+            }
+            // boxed once, even if used multiple times
+            value = Primitive.value(values[slot], primitives, slot);
+            for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                bindArgs[bindPositions[i]] = value;
             }
+        }
+
+        return bindArgs;
+    }
 
-            if (formatArgsLength > 0) {
-                sqlStatement = String.format(mLocale, data.formattedInput(), formatArgs);
+    // arguments of the repeated group are taken from the rows (if there are any), collections
+    // and arrays are flattened, other arguments are shifted accordingly
+    @Nonnull
+    private static Object[] expandBindArgs(
+            @Nonnull InputData data,
+            @Nonnull Object[] values,
+            @Nullable long[] primitives,
+            @Nullable List<Object[]> rows,
+            @Nullable int[] bindCounts) {
+
+        final int bindArgsLength = data.bindArgsLength();
+        final int groupStart = data.groupBindArgsStart();
+        final int groupLength = data.groupBindArgsLength();
+        final int groupEnd = groupStart + groupLength;
+        final int rowsLength = rows(rows);
+
+        // start of each bind argument in expanded array
+        final int[] starts = new int[bindArgsLength + 1];
+        for (int position = 0; position < bindArgsLength; position++) {
+            final int width;
+            if (rowsLength > 0 && position >= groupStart && position < groupEnd) {
+                width = position == groupStart
+                        ? rowsLength * groupLength
+                        : 0;
+            } else if (bindCounts != null) {
+                width = bindCounts[position];
             } else {
-                // this call can be cached by InputData for example
-                sqlStatement = data.formattedInput();
+                width = 1;
+            }
+            starts[position + 1] = starts[position] + width;
+        }
+
+        final Object[] bindArgs = new Object[starts[bindArgsLength]];
+
+        final int[] bindOffsets = data.bindArgOffsets();
+        final int[] bindPositions = data.bindArgPositions();
+
+        Object value;
+        int position;
+
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+
+            final boolean isGroupArg = isGroupArg(data, slot);
+            if (rowsLength > 0 && isGroupArg) {
+                continue;
+            }
+
+            value = Primitive.value(values[slot], primitives, slot);
+
+            for (int i = bindOffsets[slot], end = bindOffsets[slot + 1]; i < end; i++) {
+                position = bindPositions[i];
+                if (!isGroupArg && expandable(value)) {
+                    flatten(value, bindArgs, starts[position], starts[position + 1]);
+                } else {
+                    bindArgs[starts[position]] = value;
+                }
             }
+        }
+
+        for (int i = 0; i < rowsLength; i++) {
+            //noinspection ConstantConditions
+            System.arraycopy(rows.get(i), 0, bindArgs, starts[groupStart] + i * groupLength, groupLength);
+        }
+
+        return bindArgs;
+    }
+
+    // copies elements of a collection or an array to `out[start..end)`, if there are
+    // less elements the last one is repeated
+    private static void flatten(@Nonnull Object value, @Nonnull Object[] out, int start, int end) {
+
+        int index = start;
 
-            sqlBindArgs = bindArgs;
+        if (value instanceof Collection) {
+            for (Object element: (Collection<?>) value) {
+                if (index == end) {
+                    break;
+                }
+                out[index++] = element;
+            }
+        } else {
+            final Object[] array = (Object[]) value;
+            final int length = Math.min(array.length, end - start);
+            System.arraycopy(array, 0, out, start, length);
+            index += length;
         }
 
-        mSqlStatement = sqlStatement;
-        mSqlBindArgs = sqlBindArgs;
+        if (index == start) {
+            // collection was emptied after it was validated
+            return;
+        }
 
-        mChanged = false;
+        final Object last = out[index - 1];
+        while (index < end) {
+            out[index++] = last;
+        }
     }
 
     @Override
     public void clearBindings() {
-        mChanged = true;
-        if (mArgumentsMap != null) {
-            mArgumentsMap.clear();
+        mBindingsChanged = true;
+        if (rows(mRows) > 0) {
+            mRows.clear();
+            invalidate();
+        }
+        if (mValues != null) {
+            // immutable values are kept, so if the same values are bound again, statement is not re-built.
+            // Other values (collections, arrays, blobs, etc) are not referenced after clear
+            boolean released = false;
+            for (int slot = 0, length = mValues.length; slot < length; slot++) {
+                if (!immutable(mValues[slot])) {
+                    mValues[slot] = null;
+                    released = true;
+                }
+            }
+            if (released) {
+                // statement (its bind arguments) could reference released values
+                mExpandable = 0;
+                invalidate();
+            }
+            Arrays.fill(mBound, false);
+            mBoundLength = 0;
+        }
+        if (mNotPresent != null) {
+            mNotPresent.clear();
         }
     }
 
-    private static IllegalStateException mismatchException(String input, InputData data, Map<String, Object> argumentsMap) {
+    private static IllegalStateException mismatchException(
+            String input,
+            InputData data,
+            @Nullable boolean[] bound,
+            @Nullable Set<String> notPresent,
+            int rows) {
 
         // bound arguments mismatch
         // let's detect what arguments were not bound
         final Set<String> notFound = new HashSet<>();
-        for (String key: data.argumentNames()) {
-            if (argumentsMap.get(key) == null) {
-                notFound.add(key);
+        for (int slot = 0, length = data.argsLength(); slot < length; slot++) {
+            if (rows > 0 && slot >= data.groupArgsStart() && slot < data.groupArgsEnd()) {
+                // taken from the rows
+                continue;
             }
+            if (bound == null || !bound[slot]) {
+                notFound.add(data.argumentName(slot));
+            }
+        }
+
+        final String notPresentMessage = notPresent != null && notPresent.size() > 0
+                ? "Bound arguments that are not present in the input: `" + notPresent + "`. "
+                : "";
+
+        final String message = "Some named arguments are not bound: `" + notFound.toString() + "`. " +
+                notPresentMessage + "Input: `" + input + "`";
+
+        if (SqlEvents.INSTANCE != null) {
+            SqlEvents.INSTANCE.validationFailed(input, data, message);
         }
 
-        return new IllegalStateException("Some named arguments are not bound: `" + notFound.toString() + "`. " +
-                "Input: `" + input + "`");
+        return new IllegalStateException(message);
     }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parses and renders inputs of {@link SqlStatementBuilder} syntax without holding them in memory,
+ * which is useful for big SQL scripts (migrations, data dumps). Input is read in chunks and
+ * literal text is reported (or written) as soon as it is read, so memory usage does not depend
+ * on the size of an input.
+ * <pre>
+ * final Map&lt;String, Object&gt; arguments = Collections.singletonMap("schema", "public");
+ * SqlStreams.render(reader, writer, arguments, null, null);
+ * </pre>
+ * Repeated groups (`*{}`) are not supported by streaming, an {@link IllegalStateException} is thrown
+ * if one is encountered.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlStreams {
+
+    /**
+     * Receives events of streaming parsing in order of their appearance in the input
+     */
+    public interface Handler {
+
+        /**
+         * A chunk of literal text (the same text can be reported by multiple calls).
+         * `chars` array is reused, so it must not be kept after this call
+         */
+        void literal(@Nonnull char[] chars, int offset, int length) throws IOException;
+
+        /**
+         * `${modifier name}` format argument, `modifier` is `%s` if it was not specified
+         */
+        void formatArgument(@Nonnull String modifier, @Nonnull String name) throws IOException;
+
+        /**
+         * `?{name}` SQL binding argument
+         */
+        void bindArgument(@Nonnull String name) throws IOException;
+    }
+
+    /**
+     * Parses input from a reader and reports its parts to the handler. Reader is not closed
+     * @throws IOException if reader or handler throw
+     * @throws IllegalStateException if input is malformed (events that preceded an error are reported)
+     */
+    public static void parse(@Nonnull Reader reader, @Nonnull Handler handler)
+            throws IOException, IllegalStateException {
+        new StreamParser(handler).parse(reader);
+    }
+
+    /**
+     * The same as {@link #parse(Reader, Handler)}, but reads UTF-8 input from a channel. Channel is not closed
+     */
+    public static void parse(@Nonnull ReadableByteChannel channel, @Nonnull Handler handler)
+            throws IOException, IllegalStateException {
+        parse(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1), handler);
+    }
+
+    /**
+     * Creates a handler that writes input with substitutions: format arguments are formatted
+     * (the same way {@link SqlStatementBuilder} does), SQL binding arguments are written as `?`.
+     * `%%` and `%n` in literal text are written as `%` and line separator. {@link SqlStatementBuilder}
+     * does the same only if input has format arguments, which is not known in advance when streaming,
+     * so for inputs without format arguments the output differs (for example `like 'a%%'`)
+     * @param writer to write to
+     * @param arguments values of named arguments
+     * @param locale to format arguments with, if null {@link Locale#US} is used
+     * @param bindArguments if not null values of SQL binding arguments are added to it in order
+     *                      of appearance (so all of them must be present in `arguments`)
+     * @throws IllegalStateException (from handler methods) if an argument is not present in `arguments`
+     */
+    @Nonnull
+    public static Handler renderer(
+            @Nonnull Writer writer,
+            @Nonnull Map<String, ?> arguments,
+            @Nullable Locale locale,
+            @Nullable Collection<Object> bindArguments) {
+        return new StreamRenderer(writer, arguments, SqlTemplateImpl.locale(locale), bindArguments);
+    }
+
+    /**
+     * Renders input from a reader into a writer (writer is flushed, but not closed)
+     * @see #renderer(Writer, Map, Locale, Collection)
+     */
+    public static void render(
+            @Nonnull Reader reader,
+            @Nonnull Writer writer,
+            @Nonnull Map<String, ?> arguments,
+            @Nullable Locale locale,
+            @Nullable Collection<Object> bindArguments) throws IOException, IllegalStateException {
+        parse(reader, renderer(writer, arguments, locale, bindArguments));
+        writer.flush();
+    }
+
+    /**
+     * The same as {@link #render(Reader, Writer, Map, Locale, Collection)}, but reads and writes
+     * UTF-8 text from/to channels. Channels are not closed
+     */
+    public static void render(
+            @Nonnull ReadableByteChannel in,
+            @Nonnull WritableByteChannel out,
+            @Nonnull Map<String, ?> arguments,
+            @Nullable Locale locale,
+            @Nullable Collection<Object> bindArguments) throws IOException, IllegalStateException {
+        render(
+                Channels.newReader(in, StandardCharsets.UTF_8.newDecoder(), -1),
+                Channels.newWriter(out, StandardCharsets.UTF_8.newEncoder(), -1),
+                arguments,
+                locale,
+                bindArguments);
+    }
+
+    private SqlStreams() {
+    }
+}
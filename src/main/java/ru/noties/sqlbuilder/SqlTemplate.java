@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * Compiled form of an input string (the same syntax that {@link SqlStatementBuilder} accepts).
+ * Input is parsed once when template is created and then can be used to obtain any number
+ * of {@link SqlStatementBuilder} instances via {@link #newBuilder()} call. Those builders
+ * do not parse the input again, so it's advised to create a template once (for example as a
+ * static field) and obtain a new builder for each query:
+ * {@code
+ *      static final SqlTemplate FIND_BY_ID = SqlTemplate.create("select * from ${table} where id = ?{id}");
+ *
+ *      final SqlStatementBuilder builder = FIND_BY_ID.newBuilder()
+ *              .bind("table", "my_table")
+ *              .bind("id", 33L);
+ * }
+ *
+ * Unlike {@link SqlStatementBuilder#create(String, Locale)} an error in the input string is reported
+ * right away, so {@link #create(String, Locale)} will throw an {@link IllegalStateException} if
+ * input cannot be parsed.
+ *
+ * This class is immutable and thread-safe, so a single instance can be shared between threads.
+ * Builders obtained via {@link #newBuilder()} are not, {@link #newConcurrentBuilder()} can be used
+ * to obtain a thread safe builder.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlTemplate {
+
+    /**
+     * The same as {@link #create(String, Locale)} with `null` as a locale parameter
+     * @see #create(String, Locale)
+     */
+    public static SqlTemplate create(@Nonnull String input) throws IllegalStateException {
+        return create(input, null);
+    }
+
+    /**
+     * @param input string value to be used to construct SQL statement. Must not be null
+     * @param locale {@link Locale} object to be used in SQL statement formatting. If passed null
+     *                             the {@link Locale#US} will be used
+     * @return an instance of {@link SqlTemplate}
+     * @throws IllegalStateException if there was an error parsing the input
+     */
+    public static SqlTemplate create(@Nonnull String input, @Nullable Locale locale) throws IllegalStateException {
+        final SqlTemplateImpl template = SqlTemplateImpl.lazy(input, locale, true);
+        // parse now, so malformed input is reported at the creation time
+        template.inputData();
+        return template;
+    }
+
+    /**
+     * Creates a template from its compiled form, without parsing the input. This method is
+     * called by the code generated for {@link PrecompiledTemplate} fields and must not be
+     * used directly (compiled form is not a stable format)
+     *
+     * @throws IllegalStateException if compiled form was generated by a different version of the library
+     */
+    @Nonnull
+    public static SqlTemplate precompiled(
+            @Nonnull String input,
+            @Nullable Locale locale,
+            @Nonnull String[] compiledStrings,
+            @Nonnull int[] compiledTable) throws IllegalStateException {
+        //noinspection ConstantConditions
+        if (input == null) {
+            throw new NullPointerException("`input` string parameter cannot be null");
+        }
+        return new SqlTemplateImpl(
+                input,
+                SqlTemplateImpl.locale(locale),
+                InputData.create(compiledStrings, compiledTable));
+    }
+
+    /**
+     * @return input string that was used to create this template
+     */
+    @Nonnull
+    public abstract String input();
+
+    /**
+     * @return {@link Locale} that is used for SQL statement formatting
+     */
+    @Nonnull
+    public abstract Locale locale();
+
+    /**
+     * Each distinct named argument of the input has a slot (an index in `0..slotCount()` range,
+     * in order of appearance). Slots can be obtained once and then used with
+     * {@link SqlStatementBuilder#bind(int, Object)} to avoid name lookups:
+     * {@code
+     *      static final SqlTemplate TEMPLATE = SqlTemplate.create("select * from table where id = ?{id}");
+     *      static final int ID = TEMPLATE.slot("id");
+     *
+     *      TEMPLATE.newBuilder().bind(ID, 33L);
+     * }
+     * @param name of the named argument
+     * @return slot of the named argument
+     * @throws IllegalArgumentException if input has no named argument with specified name
+     */
+    public abstract int slot(@Nonnull String name) throws IllegalArgumentException;
+
+    /**
+     * @return number of distinct named arguments in the input
+     * @see #slot(String)
+     */
+    public abstract int slotCount();
+
+    /**
+     * @param slot of a named argument
+     * @return name of the named argument
+     * @throws IllegalArgumentException if slot is not in `0..slotCount()` range
+     * @see #slot(String)
+     */
+    @Nonnull
+    public abstract String slotName(int slot) throws IllegalArgumentException;
+
+    /**
+     * @return metrics of this template or null if metrics are disabled or this template
+     * is short-lived (backs a builder created ad hoc)
+     * @see SqlTemplateMetrics
+     */
+    @Nullable
+    public abstract SqlTemplateMetrics metrics();
+
+    /**
+     * @return total length of the input text without placeholders
+     */
+    public abstract int literalLength();
+
+    /**
+     * @param slot of a named argument
+     * @return maximum width (in chars) a format argument (`${}`) with specified slot was rendered with,
+     * 0 if it was not rendered yet or if it's a SQL binding argument (`?{}`). Widths greater than 1024
+     * are not recorded (so a single oversized value does not affect all following statements)
+     * @throws IllegalArgumentException if there is no named argument with specified slot
+     */
+    public abstract int maxWidth(int slot) throws IllegalArgumentException;
+
+    /**
+     * Rendered statements are allocated with this length, so a statement with arguments that are not
+     * wider than previously rendered ones is built without copying
+     * @return estimated length of a rendered SQL statement, based on the literals and widths of previously
+     * rendered arguments (statistics are shared by all builders of this template)
+     * @see #literalLength()
+     * @see #maxWidth(int)
+     */
+    public abstract int estimatedLength();
+
+    /**
+     * @return a new instance of {@link SqlStatementBuilder} that shares parsed input with this template
+     */
+    @Nonnull
+    public abstract SqlStatementBuilder newBuilder();
+
+    /**
+     * Obtains a builder from a pool of released builders of this template (or creates a new one if
+     * pool is empty). Must be returned with {@link #release(SqlStatementBuilder)} after use, so
+     * hot code paths do not allocate a builder for each statement:
+     * {@code
+     *      final SqlStatementBuilder builder = TEMPLATE.acquire();
+     *      try {
+     *          // bind and execute
+     *      } finally {
+     *          TEMPLATE.release(builder);
+     *      }
+     * }
+     * This method is thread-safe (pool is lock-free), but an acquired builder is not
+     * @return a builder that shares parsed input with this template
+     * @see #release(SqlStatementBuilder)
+     */
+    @Nonnull
+    public abstract SqlStatementBuilder acquire();
+
+    /**
+     * Returns a builder to the pool of this template. Its bindings, rows and built statement are
+     * cleared (a pooled builder does not reference bound values), so it must not be used after this call
+     * @param builder obtained via {@link #acquire()} or {@link #newBuilder()} of this template
+     * @throws IllegalArgumentException if builder was not obtained from this template (concurrent
+     * builders cannot be pooled)
+     * @throws IllegalStateException if builder is already released
+     */
+    public abstract void release(@Nonnull SqlStatementBuilder builder)
+            throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * @return a new thread safe instance of {@link SqlStatementBuilder} that shares parsed input with this template
+     * @see SqlStatementBuilder#createConcurrent(String, Locale)
+     */
+    @Nonnull
+    public abstract SqlStatementBuilder newConcurrentBuilder();
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Locale;
+
+/**
+ * Bounded cache of {@link SqlTemplate}s, keyed by input string and {@link Locale}. When
+ * maximum number of entries is exceeded least recently used templates are evicted (for caches
+ * of 8 and more entries additionally 1/8 of maximum is evicted, so following misses do not evict).
+ * {@code
+ *      final SqlTemplateCache cache = SqlTemplateCache.create(256);
+ *      final SqlTemplate template = cache.template("select * from ${table}", null);
+ * }
+ *
+ * A cache can be installed globally via {@link #install(SqlTemplateCache)} call. In this case
+ * {@link SqlStatementBuilder#create(String, Locale)} will obtain templates from it, so each distinct
+ * input is parsed only once (across all threads). By default no cache is installed.
+ *
+ * This class is thread safe. Lookups do not lock (suitable for virtual threads) and a template that
+ * is missing is parsed by the calling thread without blocking lookups of other templates.
+ * Under concurrent access eviction order is approximate and number of entries
+ * can briefly exceed maximum.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlTemplateCache {
+
+    private static volatile SqlTemplateCache sInstalled;
+
+    /**
+     * @param maxEntries maximum number of templates to hold, must be greater than 0
+     * @return an instance of {@link SqlTemplateCache}
+     */
+    public static SqlTemplateCache create(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("`maxEntries` must be greater than 0, passed: " + maxEntries);
+        }
+        return new SqlTemplateCacheImpl(maxEntries);
+    }
+
+    /**
+     * Installs a cache that will be used by {@link SqlStatementBuilder#create(String, Locale)}
+     * @param cache to use or null to stop using a cache
+     */
+    public static void install(@Nullable SqlTemplateCache cache) {
+        sInstalled = cache;
+    }
+
+    /**
+     * @return a cache that was installed via {@link #install(SqlTemplateCache)} or null
+     */
+    @Nullable
+    public static SqlTemplateCache installed() {
+        return sInstalled;
+    }
+
+    /**
+     * @param input string value to be used to construct SQL statement. Must not be null
+     * @param locale {@link Locale} object to be used in SQL statement formatting. If passed null
+     *                             the {@link Locale#US} will be used
+     * @return cached instance of {@link SqlTemplate} or a newly created one
+     * @throws IllegalStateException if there was an error parsing the input
+     * @see SqlTemplate#create(String, Locale)
+     */
+    @Nonnull
+    public SqlTemplate template(@Nonnull String input, @Nullable Locale locale) throws IllegalStateException {
+        final SqlTemplateImpl template = obtain(input, locale);
+        template.inputData();
+        return template;
+    }
+
+    // returns a template that is not parsed yet (if it's a miss), used by SqlStatementBuilder
+    // to keep its contract of throwing an exception only on `sqlStatement` or `sqlBindArguments` calls
+    @Nonnull
+    abstract SqlTemplateImpl obtain(@Nonnull String input, @Nullable Locale locale);
+
+    /**
+     * @return maximum number of templates that this cache can hold
+     */
+    public abstract int maxEntries();
+
+    /**
+     * @return current number of cached templates
+     */
+    public abstract int size();
+
+    /**
+     * @return number of times a template was found in this cache
+     */
+    public abstract long hitCount();
+
+    /**
+     * @return number of times a template was not found in this cache (and was created)
+     */
+    public abstract long missCount();
+
+    /**
+     * @return number of templates that were evicted from this cache
+     */
+    public abstract long evictionCount();
+
+    /**
+     * Removes all cached templates. Does not reset counters
+     */
+    public abstract void clear();
+}
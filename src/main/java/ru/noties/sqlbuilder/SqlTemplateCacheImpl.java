@@ -0,0 +1,254 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lookups do not lock (so virtual threads are not pinned and a miss doesn't block other lookups): each entry
+// keeps a stamp of its last access and when the cache is full a single thread evicts entries with
+// the smallest stamps (in batches of 1/8 of maximum), while other threads proceed without waiting for it.
+// The clock is coarse: it is advanced only by misses, so a hit does not write shared state except
+// its entry stamp (and only once per miss) and a striped hit counter
+class SqlTemplateCacheImpl extends SqlTemplateCache {
+
+    private final int mMaxEntries;
+
+    private final ConcurrentMap<Key, Entry> mMap = new ConcurrentHashMap<>();
+
+    // number of entries (can be greater than maximum until eviction catches up)
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    // source of access stamps, advanced only on misses. A created entry receives `clock << 1` and a hit
+    // `clock << 1 | 1`, so an entry that is hit is ordered after all entries created before the hit
+    // (order of hits between two misses is not tracked)
+    private final AtomicLong mClock = new AtomicLong();
+
+    // set while a thread is evicting
+    private final AtomicBoolean mEvicting = new AtomicBoolean();
+
+    private final StripedCounter mHits = new StripedCounter();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+
+    SqlTemplateCacheImpl(int maxEntries) {
+        mMaxEntries = maxEntries;
+    }
+
+    @Nonnull
+    @Override
+    SqlTemplateImpl obtain(@Nonnull String input, @Nullable Locale locale) {
+
+        //noinspection ConstantConditions
+        if (input == null) {
+            throw new NullPointerException("`input` string parameter cannot be null");
+        }
+
+        final Key key = new Key(input, SqlTemplateImpl.locale(locale));
+
+        final Entry entry = mMap.get(key);
+
+        if (entry != null) {
+            mHits.increment();
+            touch(entry);
+            final SqlTemplateMetricsImpl metrics = entry.template.metrics();
+            if (metrics != null) {
+                metrics.increment(SqlTemplateMetrics.Counter.CACHE_HITS);
+            }
+            return entry.template;
+        }
+
+        mMisses.incrementAndGet();
+
+        // template creation is cheap (parsing is done lazily by the caller), so if multiple threads
+        // miss the same key, all of them create a template and only one is kept
+        final Entry created = new Entry(new SqlTemplateImpl(key.input, key.locale, true), mClock.incrementAndGet() << 1);
+
+        final Entry existing = mMap.putIfAbsent(key, created);
+        if (existing != null) {
+            touch(existing);
+            return existing.template;
+        }
+
+        if (mSize.incrementAndGet() > mMaxEntries) {
+            evict();
+        }
+
+        return created.template;
+    }
+
+    // repeated hits between two misses write the stamp only once
+    private void touch(@Nonnull Entry entry) {
+        final long access = (mClock.get() << 1) | 1L;
+        if (entry.access != access) {
+            entry.access = access;
+        }
+    }
+
+    // evicts least recently used entries until size fits. If another thread is evicting already, returns
+    // immediately (that thread re-checks size before it finishes)
+    private void evict() {
+        while (mSize.get() > mMaxEntries
+                && mEvicting.compareAndSet(false, true)) {
+            try {
+                int excess;
+                while ((excess = mSize.get() - mMaxEntries) > 0) {
+                    // scanning all entries is not cheap, so each scan also frees some room for following misses
+                    if (evictEldest(excess + (mMaxEntries >> 3)) == 0) {
+                        break;
+                    }
+                }
+            } finally {
+                mEvicting.set(false);
+            }
+        }
+    }
+
+    private int evictEldest(int count) {
+
+        final List<Map.Entry<Key, Entry>> entries = new ArrayList<>(mMaxEntries + 16);
+        for (Map.Entry<Key, Entry> entry: mMap.entrySet()) {
+            entries.add(entry);
+        }
+
+        final int size = entries.size();
+        if (size == 0) {
+            return 0;
+        }
+
+        final long[] stamps = new long[size];
+        for (int i = 0; i < size; i++) {
+            stamps[i] = entries.get(i).getValue().access;
+        }
+        Arrays.sort(stamps);
+
+        // entries accessed after the snapshot have greater stamp now and are kept
+        final long threshold = stamps[Math.min(count, size) - 1];
+
+        int evicted = 0;
+
+        Map.Entry<Key, Entry> entry;
+
+        for (int i = 0; i < size && evicted < count; i++) {
+            entry = entries.get(i);
+            // entry might have been removed by `clear` already
+            if (entry.getValue().access <= threshold
+                    && mMap.remove(entry.getKey(), entry.getValue())) {
+                mSize.decrementAndGet();
+                mEvictions.incrementAndGet();
+                evicted += 1;
+            }
+        }
+
+        return evicted;
+    }
+
+    @Override
+    public int maxEntries() {
+        return mMaxEntries;
+    }
+
+    @Override
+    public int size() {
+        return mSize.get();
+    }
+
+    @Override
+    public long hitCount() {
+        return mHits.sum();
+    }
+
+    @Override
+    public long missCount() {
+        return mMisses.get();
+    }
+
+    @Override
+    public long evictionCount() {
+        return mEvictions.get();
+    }
+
+    @Override
+    public void clear() {
+        for (Map.Entry<Key, Entry> entry: mMap.entrySet()) {
+            if (mMap.remove(entry.getKey(), entry.getValue())) {
+                mSize.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplateCache{" +
+                "maxEntries=" + mMaxEntries +
+                ", size=" + size() +
+                ", hits=" + hitCount() +
+                ", misses=" + missCount() +
+                ", evictions=" + evictionCount() +
+                '}';
+    }
+
+    private static final class Entry {
+
+        final SqlTemplateImpl template;
+
+        // written without synchronization, a lost update only makes eviction order less precise
+        volatile long access;
+
+        Entry(@Nonnull SqlTemplateImpl template, long access) {
+            this.template = template;
+            this.access = access;
+        }
+    }
+
+    private static final class Key {
+
+        final String input;
+        final Locale locale;
+
+        Key(@Nonnull String input, @Nonnull Locale locale) {
+            this.input = input;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            final Key key = (Key) o;
+            return input.equals(key.input) && locale.equals(key.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = input.hashCode();
+            result = 31 * result + locale.hashCode();
+            return result;
+        }
+    }
+}
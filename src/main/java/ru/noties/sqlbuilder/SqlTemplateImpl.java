@@ -0,0 +1,337 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class SqlTemplateImpl extends SqlTemplate {
+
+    // does not parse the input, it will be done on the first `inputData()` call. Templates
+    // of builders created ad hoc are short-lived, so they are not `metered` (have no metrics)
+    static SqlTemplateImpl lazy(@Nonnull String input, @Nullable Locale locale, boolean metered) {
+        //noinspection ConstantConditions
+        if (input == null) {
+            throw new NullPointerException("`input` string parameter cannot be null");
+        }
+        return new SqlTemplateImpl(input, locale(locale), metered);
+    }
+
+    @Nonnull
+    static Locale locale(@Nullable Locale locale) {
+        return locale == null
+                ? Locale.US // US is used as default locale for String.format() call (if present)
+                : locale;
+    }
+
+    // number of builders that are kept for `acquire` calls (a power of two)
+    private static final int POOL_SIZE = poolSize(Runtime.getRuntime().availableProcessors());
+
+    static int poolSize(int processors) {
+        return Math.min(32, Integer.highestOneBit(Math.max(1, processors) * 2 - 1) << 1);
+    }
+
+    private final String mInput;
+    private final Locale mLocale;
+
+    // released builders, created on first release. If multiple threads race here, some of
+    // the released builders are not kept, which doesn't matter
+    private volatile AtomicReferenceArray<SqlStatementBuilderImpl> mPool;
+
+    // volatile to safely publish parsed data to other threads. If multiple threads
+    // race here, input will be parsed more than once, but result is the same
+    private volatile InputData mInputData;
+
+    // set if parsing has failed, so `inputDataOrNull` won't try to parse again
+    private volatile boolean mMalformed;
+
+    // 0 - not known yet, 1 - locale uses ascii digits, 2 - locale has own digits
+    private volatile int mDigits;
+
+    // null if metrics are disabled or template is not metered
+    private final SqlTemplateMetricsImpl mMetrics;
+
+    SqlTemplateImpl(@Nonnull String input, @Nonnull Locale locale, boolean metered) {
+        mInput = input;
+        mLocale = locale;
+        mMetrics = SqlTemplateMetrics.ENABLED && metered
+                ? SqlTemplateMetricsImpl.create(input)
+                : null;
+    }
+
+    SqlTemplateImpl(@Nonnull String input, @Nonnull Locale locale, @Nonnull InputData data) {
+        this(input, locale, true);
+        mInputData = data;
+        if (mMetrics != null) {
+            mMetrics.parsed(data);
+        }
+    }
+
+    // might throw IllegalStateException if input cannot be parsed (in this case
+    // nothing is cached and each call will throw)
+    @Nonnull
+    InputData inputData() {
+        InputData data = mInputData;
+        if (data == null) {
+            final SqlEvents events = SqlEvents.INSTANCE;
+            final Object event = events != null ? events.beginCompile() : null;
+            final long start = mMetrics != null ? System.nanoTime() : 0L;
+            try {
+                data = InputData.create(mInput);
+            } catch (IllegalStateException e) {
+                if (events != null) {
+                    events.compiled(event, mInput, null);
+                }
+                throw e;
+            }
+            if (mMetrics != null) {
+                mMetrics.record(SqlTemplateMetrics.Timer.PARSE, System.nanoTime() - start);
+                mMetrics.parsed(data);
+            }
+            if (events != null) {
+                events.compiled(event, mInput, data);
+            }
+            mInputData = data;
+        }
+        return data;
+    }
+
+    // returns null if input is malformed
+    @Nullable
+    InputData inputDataOrNull() {
+        InputData data = mInputData;
+        if (data == null
+                && !mMalformed) {
+            try {
+                data = inputData();
+            } catch (IllegalStateException e) {
+                mMalformed = true;
+            }
+        }
+        return data;
+    }
+
+    @Nonnull
+    String render(
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts) {
+        final InputData data = inputData();
+        final SqlEvents events = SqlEvents.INSTANCE;
+        final Object event = events != null ? events.beginRender() : null;
+        final long start = mMetrics != null ? System.nanoTime() : 0L;
+        final String statement = data.render(mLocale, asciiDigits(), formatArgs, formatPrimitives, rows, bindCounts);
+        if (mMetrics != null) {
+            mMetrics.record(SqlTemplateMetrics.Timer.RENDER, System.nanoTime() - start);
+        }
+        if (events != null) {
+            events.rendered(event, mInput, data, statement.length());
+        }
+        return statement;
+    }
+
+    void renderTo(
+            @Nonnull StringBuilder builder,
+            @Nonnull Object[] formatArgs,
+            @Nullable long[] formatPrimitives,
+            int rows,
+            @Nullable int[] bindCounts) {
+        final InputData data = inputData();
+        final SqlEvents events = SqlEvents.INSTANCE;
+        final Object event = events != null ? events.beginRender() : null;
+        final long start = mMetrics != null ? System.nanoTime() : 0L;
+        final int length = builder.length();
+        builder.ensureCapacity(length + data.estimatedLength(rows, bindCounts));
+        data.renderTo(builder, mLocale, asciiDigits(), formatArgs, formatPrimitives, rows, bindCounts);
+        if (mMetrics != null) {
+            mMetrics.record(SqlTemplateMetrics.Timer.RENDER, System.nanoTime() - start);
+        }
+        if (events != null) {
+            events.rendered(event, mInput, data, builder.length() - length);
+        }
+    }
+
+    // if locale uses ascii digits, then `%d` arguments can be appended without Formatter
+    private boolean asciiDigits() {
+        int digits = mDigits;
+        if (digits == 0) {
+            digits = DecimalFormatSymbols.getInstance(mLocale).getZeroDigit() == '0'
+                    ? 1
+                    : 2;
+            mDigits = digits;
+        }
+        return digits == 1;
+    }
+
+    @Nonnull
+    @Override
+    public String input() {
+        return mInput;
+    }
+
+    @Nonnull
+    @Override
+    public Locale locale() {
+        return mLocale;
+    }
+
+    @Override
+    public int slot(@Nonnull String name) throws IllegalArgumentException {
+        final int slot = inputData().argumentId(name);
+        if (slot == -1) {
+            throw new IllegalArgumentException("Input has no named argument: `" + name + "`. " +
+                    "Input: `" + mInput + "`");
+        }
+        return slot;
+    }
+
+    @Override
+    public int slotCount() {
+        return inputData().argsLength();
+    }
+
+    @Nonnull
+    @Override
+    public String slotName(int slot) {
+        final InputData data = inputData();
+        if (slot < 0 || slot >= data.argsLength()) {
+            throw new IllegalArgumentException("Invalid slot: `" + slot + "`, input has `" +
+                    data.argsLength() + "` named arguments. Input: `" + mInput + "`");
+        }
+        return data.argumentName(slot);
+    }
+
+    @Nullable
+    @Override
+    public SqlTemplateMetricsImpl metrics() {
+        return mMetrics;
+    }
+
+    @Override
+    public int literalLength() {
+        return inputData().literalLength();
+    }
+
+    @Override
+    public int maxWidth(int slot) {
+        final InputData data = inputData();
+        if (slot < 0 || slot >= data.argsLength()) {
+            throw new IllegalArgumentException("Invalid slot: `" + slot + "`, input has `" +
+                    data.argsLength() + "` named arguments. Input: `" + mInput + "`");
+        }
+        final int[] formatOffsets = data.formatArgOffsets();
+        final int[] formatPositions = data.formatArgPositions();
+        int width = 0;
+        for (int i = formatOffsets[slot], end = formatOffsets[slot + 1]; i < end; i++) {
+            width = Math.max(width, data.formatArgWidth(formatPositions[i]));
+        }
+        return width;
+    }
+
+    @Override
+    public int estimatedLength() {
+        return inputData().estimatedLength(1, null);
+    }
+
+    @Nonnull
+    @Override
+    public SqlStatementBuilder newBuilder() {
+        return new SqlStatementBuilderImpl(this);
+    }
+
+    @Nonnull
+    @Override
+    public SqlStatementBuilder acquire() {
+
+        final AtomicReferenceArray<SqlStatementBuilderImpl> pool = mPool;
+
+        if (pool != null) {
+
+            // start from a thread specific index, so threads do not compete for the same element
+            final int mask = POOL_SIZE - 1;
+            final int start = Platform.threadHash() & mask;
+
+            SqlStatementBuilderImpl builder;
+
+            for (int i = 0; i < POOL_SIZE; i++) {
+                final int index = (start + i) & mask;
+                builder = pool.get(index);
+                if (builder != null
+                        && pool.compareAndSet(index, builder, null)) {
+                    builder.pooled(false);
+                    return builder;
+                }
+            }
+        }
+
+        return new SqlStatementBuilderImpl(this);
+    }
+
+    @Override
+    public void release(@Nonnull SqlStatementBuilder builder) {
+
+        if (!(builder instanceof SqlStatementBuilderImpl)
+                || ((SqlStatementBuilderImpl) builder).template() != this) {
+            throw new IllegalArgumentException("Builder was not obtained from this template: `" + builder + "`. " +
+                    "Template: `" + mInput + "`");
+        }
+
+        final SqlStatementBuilderImpl impl = (SqlStatementBuilderImpl) builder;
+        if (impl.pooled()) {
+            throw new IllegalStateException("Builder is already released. Template: `" + mInput + "`");
+        }
+
+        // pooled builder must not keep user data (values, rows, statement) alive
+        impl.recycle();
+        impl.pooled(true);
+
+        AtomicReferenceArray<SqlStatementBuilderImpl> pool = mPool;
+        if (pool == null) {
+            pool = new AtomicReferenceArray<>(POOL_SIZE);
+            mPool = pool;
+        }
+
+        final int mask = POOL_SIZE - 1;
+        final int start = Platform.threadHash() & mask;
+
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet((start + i) & mask, null, impl)) {
+                return;
+            }
+        }
+
+        // pool is full, builder will be garbage collected
+    }
+
+    @Nonnull
+    @Override
+    public SqlStatementBuilder newConcurrentBuilder() {
+        return new ConcurrentSqlStatementBuilderImpl(this);
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplate{" +
+                "input='" + mInput + '\'' +
+                ", locale=" + mLocale +
+                '}';
+    }
+}
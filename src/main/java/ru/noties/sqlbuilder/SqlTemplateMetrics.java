@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Counters and timings of a single template. Metrics are collected only if `ru.noties.sqlbuilder.metrics`
+ * system property is `true` when this class is loaded, otherwise {@link SqlTemplate#metrics()} returns null
+ * and nothing is recorded. Only long-lived templates have metrics: created with {@link SqlTemplate#create(String)},
+ * obtained from {@link SqlTemplateCache}, {@link SqlTemplateRegistry}, {@link SqlTemplateRepository} or
+ * precompiled ones. Builders created ad hoc (via {@link SqlStatementBuilder#create(String)} without an installed
+ * cache) are not recorded. To export metrics a {@link Listener} can be set, it's notified about
+ * each created template:
+ * <pre>
+ * SqlTemplateMetrics.setListener(new SqlTemplateMetrics.Listener() {
+ *     public void onCreated(SqlTemplateMetrics metrics) {
+ *         exporter.register(metrics.templateId(), metrics);
+ *     }
+ * });
+ * </pre>
+ *
+ * Counters are striped (each thread increments own cell), so recording doesn't contend between threads.
+ * Durations are counted in buckets by powers of two of nanoseconds: bucket `0` contains zero durations
+ * and bucket `i` contains durations in `[2^(i - 1), 2^i)` nanoseconds range.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see SqlTemplate#metrics()
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlTemplateMetrics {
+
+    // checked before each recording, so if disabled JIT removes recording code
+    static final boolean ENABLED = Boolean.getBoolean("ru.noties.sqlbuilder.metrics");
+
+    /**
+     * Number of buckets of a timer
+     */
+    public static final int BUCKETS = 64;
+
+    public enum Counter {
+        /**
+         * number of bound values
+         */
+        BINDS,
+        /**
+         * number of built (or re-built) SQL statements
+         */
+        STATEMENTS,
+        /**
+         * total length of built SQL statements
+         */
+        STATEMENT_LENGTH,
+        /**
+         * number of times the template was obtained from a {@link SqlTemplateCache}
+         */
+        CACHE_HITS
+    }
+
+    public enum Timer {
+        /**
+         * parsing of the input
+         */
+        PARSE,
+        /**
+         * rendering of SQL statement with format arguments
+         */
+        RENDER,
+        /**
+         * building of SQL bind arguments array
+         */
+        BIND_ARGUMENTS
+    }
+
+    public interface Listener {
+
+        /**
+         * Called when a template is created (before its input is parsed)
+         */
+        void onCreated(@Nonnull SqlTemplateMetrics metrics);
+    }
+
+    /**
+     * @return true if metrics are collected (`ru.noties.sqlbuilder.metrics` system property is `true`)
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @param listener to be notified about created templates, null to remove current one
+     */
+    public static void setListener(@Nullable Listener listener) {
+        SqlTemplateMetricsImpl.listener(listener);
+    }
+
+    /**
+     * @return index of a bucket for specified duration
+     */
+    public static int bucket(long nanos) {
+        return nanos <= 0
+                ? 0
+                : BUCKETS - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * @return id of the template, unique for templates created by this process
+     */
+    public abstract int templateId();
+
+    /**
+     * @return input of the template
+     */
+    @Nonnull
+    public abstract String input();
+
+    /**
+     * @return number of named arguments (slots) of the template, -1 if its input is not parsed yet
+     * @see SqlTemplate#slotCount()
+     */
+    public abstract int slotCount();
+
+    /**
+     * @return number of format argument (`${}`) placeholders, -1 if input is not parsed yet
+     */
+    public abstract int formatArgumentCount();
+
+    /**
+     * @return number of SQL binding argument (`?{}`) placeholders, -1 if input is not parsed yet
+     */
+    public abstract int bindArgumentCount();
+
+    public abstract long count(@Nonnull Counter counter);
+
+    /**
+     * @return number of recorded durations
+     */
+    public abstract long timerCount(@Nonnull Timer timer);
+
+    /**
+     * @return sum of recorded durations
+     */
+    public abstract long timerTotalNanos(@Nonnull Timer timer);
+
+    /**
+     * @return a copy of buckets of recorded durations (of length {@link #BUCKETS})
+     * @see #bucket(long)
+     */
+    @Nonnull
+    public abstract long[] timerBuckets(@Nonnull Timer timer);
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class SqlTemplateMetricsImpl extends SqlTemplateMetrics {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private static volatile Listener sListener;
+
+    static void listener(@Nullable Listener listener) {
+        sListener = listener;
+    }
+
+    // number of stripes (a power of two)
+    static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    static int stripes(int processors) {
+        return Math.min(16, Integer.highestOneBit(Math.max(1, processors) * 2 - 1));
+    }
+
+    private static final int COUNTERS = Counter.values().length;
+    private static final int TIMERS = Timer.values().length;
+
+    // cells of a stripe: counters, then count and total of each timer. Rounded up to
+    // a multiple of 8 longs, so stripes do not share cache lines
+    private static final int STRIPE_LENGTH = ((COUNTERS + TIMERS * 2 + 7) >>> 3) << 3;
+
+    @Nonnull
+    static SqlTemplateMetricsImpl create(@Nonnull String input) {
+        final SqlTemplateMetricsImpl metrics = new SqlTemplateMetricsImpl(IDS.incrementAndGet(), input);
+        final Listener listener = sListener;
+        if (listener != null) {
+            listener.onCreated(metrics);
+        }
+        return metrics;
+    }
+
+    private final int mId;
+    private final String mInput;
+
+    // set when input is parsed
+    private volatile InputData mData;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+    // buckets are spread over many cells already, so they are not striped
+    private final AtomicLongArray mBuckets = new AtomicLongArray(TIMERS * BUCKETS);
+
+    private SqlTemplateMetricsImpl(int id, @Nonnull String input) {
+        mId = id;
+        mInput = input;
+    }
+
+    void parsed(@Nonnull InputData data) {
+        mData = data;
+    }
+
+    void increment(@Nonnull Counter counter) {
+        mCells.getAndIncrement(stripe() + counter.ordinal());
+    }
+
+    void add(@Nonnull Counter counter, long value) {
+        mCells.getAndAdd(stripe() + counter.ordinal(), value);
+    }
+
+    void record(@Nonnull Timer timer, long nanos) {
+        final int cell = stripe() + COUNTERS + (timer.ordinal() << 1);
+        mCells.getAndIncrement(cell);
+        mCells.getAndAdd(cell + 1, nanos);
+        mBuckets.getAndIncrement(timer.ordinal() * BUCKETS + bucket(nanos));
+    }
+
+    // threads receive sequential ids, so they are evenly distributed between stripes
+    private static int stripe() {
+        return (Platform.threadHash() & (STRIPES - 1)) * STRIPE_LENGTH;
+    }
+
+    private long sum(int cell) {
+        long sum = 0L;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += mCells.get(i * STRIPE_LENGTH + cell);
+        }
+        return sum;
+    }
+
+    @Override
+    public int templateId() {
+        return mId;
+    }
+
+    @Nonnull
+    @Override
+    public String input() {
+        return mInput;
+    }
+
+    @Override
+    public int slotCount() {
+        final InputData data = mData;
+        return data != null ? data.argsLength() : -1;
+    }
+
+    @Override
+    public int formatArgumentCount() {
+        final InputData data = mData;
+        return data != null ? data.formatArgsLength() : -1;
+    }
+
+    @Override
+    public int bindArgumentCount() {
+        final InputData data = mData;
+        return data != null ? data.bindArgsLength() : -1;
+    }
+
+    @Override
+    public long count(@Nonnull Counter counter) {
+        return sum(counter.ordinal());
+    }
+
+    @Override
+    public long timerCount(@Nonnull Timer timer) {
+        return sum(COUNTERS + (timer.ordinal() << 1));
+    }
+
+    @Override
+    public long timerTotalNanos(@Nonnull Timer timer) {
+        return sum(COUNTERS + (timer.ordinal() << 1) + 1);
+    }
+
+    @Nonnull
+    @Override
+    public long[] timerBuckets(@Nonnull Timer timer) {
+        final long[] buckets = new long[BUCKETS];
+        final int start = timer.ordinal() * BUCKETS;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = mBuckets.get(start + i);
+        }
+        return buckets;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplateMetrics{" +
+                "templateId=" + mId +
+                ", statements=" + count(Counter.STATEMENTS) +
+                ", binds=" + count(Counter.BINDS) +
+                '}';
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Immutable lookup table of named templates that are compiled (in parallel) when registry is built,
+ * so malformed inputs are reported at once (for example at application startup) and no input is
+ * parsed on a request:
+ * <pre>
+ * final SqlTemplateRegistry registry = SqlTemplateRegistry.builder()
+ *         .add("findUser", "select * from users where id = ?{id}")
+ *         .addAll(SqlTemplateRepository.load(Paths.get("queries.sql")))
+ *         .build();
+ * final SqlStatementBuilder builder = registry.newBuilder("findUser");
+ * </pre>
+ *
+ * This class is immutable and thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlTemplateRegistry {
+
+    /**
+     * @return a new builder of a registry
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param name of a template
+     * @return compiled template
+     * @throws IllegalArgumentException if there is no template with specified name
+     */
+    @Nonnull
+    public abstract SqlTemplate template(@Nonnull String name) throws IllegalArgumentException;
+
+    /**
+     * @return a new {@link SqlStatementBuilder} for a named template
+     * @see #template(String)
+     */
+    @Nonnull
+    public SqlStatementBuilder newBuilder(@Nonnull String name) throws IllegalArgumentException {
+        return template(name).newBuilder();
+    }
+
+    /**
+     * @return true if registry has a template with specified name
+     */
+    public abstract boolean contains(@Nonnull String name);
+
+    /**
+     * @return names of all templates in order they were added
+     */
+    @Nonnull
+    public abstract Set<String> names();
+
+    /**
+     * @return number of templates
+     */
+    public abstract int size();
+
+    public static final class Builder {
+
+        private final List<SqlTemplateRegistryImpl.Entry> mEntries = new ArrayList<>();
+        private final Set<String> mNames = new HashSet<>();
+
+        private Locale mLocale;
+        private ForkJoinPool mPool;
+
+        Builder() {
+        }
+
+        /**
+         * @param locale to be used by templates added via {@link #add(String, String)}, if null
+         *               {@link Locale#US} is used
+         */
+        @Nonnull
+        public Builder locale(@Nullable Locale locale) {
+            mLocale = locale;
+            return this;
+        }
+
+        /**
+         * @param pool to compile templates on. If not specified a new pool is created (with parallelism
+         *             equal to the number of processors) and shut down after templates are compiled
+         */
+        @Nonnull
+        public Builder pool(@Nullable ForkJoinPool pool) {
+            mPool = pool;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if a template with specified name is already added
+         */
+        @Nonnull
+        public Builder add(@Nonnull String name, @Nonnull String input) throws IllegalArgumentException {
+            //noinspection ConstantConditions
+            if (input == null) {
+                throw new NullPointerException("`input` string parameter cannot be null");
+            }
+            name(name);
+            mEntries.add(new SqlTemplateRegistryImpl.InputEntry(name, input));
+            return this;
+        }
+
+        /**
+         * Adds all statements of a repository (they are compiled with the locale of the repository)
+         * @throws IllegalArgumentException if a template with a name of a statement is already added
+         */
+        @Nonnull
+        public Builder addAll(@Nonnull SqlTemplateRepository repository) throws IllegalArgumentException {
+            for (String name: repository.names()) {
+                name(name);
+                mEntries.add(new SqlTemplateRegistryImpl.RepositoryEntry(name, repository));
+            }
+            return this;
+        }
+
+        private void name(@Nonnull String name) {
+            if (!mNames.add(name)) {
+                throw new IllegalArgumentException("Template name is used more than once: `" + name + "`");
+            }
+        }
+
+        /**
+         * Compiles all added templates in parallel
+         * @return a registry with all compiled templates
+         * @throws IllegalStateException if some of templates cannot be parsed, message contains
+         * errors of all of them (and each error is added as a suppressed exception)
+         */
+        @Nonnull
+        public SqlTemplateRegistry build() throws IllegalStateException {
+            return SqlTemplateRegistryImpl.compile(
+                    mEntries,
+                    SqlTemplateImpl.locale(mLocale),
+                    mPool);
+        }
+    }
+}
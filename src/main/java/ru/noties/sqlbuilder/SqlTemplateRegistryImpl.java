@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+class SqlTemplateRegistryImpl extends SqlTemplateRegistry {
+
+    // templates are compiled in tasks of at most this size
+    private static final int THRESHOLD = 16;
+
+    abstract static class Entry {
+
+        final String name;
+
+        Entry(@Nonnull String name) {
+            this.name = name;
+        }
+
+        @Nonnull
+        abstract SqlTemplate compile(@Nonnull Locale locale) throws IllegalStateException;
+    }
+
+    static class InputEntry extends Entry {
+
+        private final String input;
+
+        InputEntry(@Nonnull String name, @Nonnull String input) {
+            super(name);
+            this.input = input;
+        }
+
+        @Nonnull
+        @Override
+        SqlTemplate compile(@Nonnull Locale locale) {
+            return SqlTemplate.create(input, locale);
+        }
+    }
+
+    static class RepositoryEntry extends Entry {
+
+        private final SqlTemplateRepository repository;
+
+        RepositoryEntry(@Nonnull String name, @Nonnull SqlTemplateRepository repository) {
+            super(name);
+            this.repository = repository;
+        }
+
+        @Nonnull
+        @Override
+        SqlTemplate compile(@Nonnull Locale locale) {
+            // repository is thread-safe and keeps compiled template
+            return repository.template(name);
+        }
+    }
+
+    @Nonnull
+    static SqlTemplateRegistry compile(
+            @Nonnull List<Entry> list,
+            @Nonnull Locale locale,
+            @Nullable ForkJoinPool pool) {
+
+        final Entry[] entries = list.toArray(new Entry[list.size()]);
+        final SqlTemplate[] templates = new SqlTemplate[entries.length];
+        final RuntimeException[] errors = new RuntimeException[entries.length];
+
+        final CompileAction action = new CompileAction(entries, locale, templates, errors, 0, entries.length);
+
+        if (pool != null) {
+            pool.invoke(action);
+        } else {
+            final ForkJoinPool own = new ForkJoinPool();
+            try {
+                own.invoke(action);
+            } finally {
+                own.shutdown();
+            }
+        }
+
+        // results of all tasks are visible after `invoke` returns
+        IllegalStateException exception = null;
+        StringBuilder message = null;
+
+        for (int i = 0; i < entries.length; i++) {
+            if (errors[i] != null) {
+                if (message == null) {
+                    message = new StringBuilder("Some templates cannot be compiled:");
+                }
+                message.append("\n  `").append(entries[i].name).append("`: ").append(errors[i].getMessage());
+            }
+        }
+
+        if (message != null) {
+            exception = new IllegalStateException(message.toString());
+            for (RuntimeException error: errors) {
+                if (error != null) {
+                    exception.addSuppressed(error);
+                }
+            }
+            throw exception;
+        }
+
+        final Map<String, SqlTemplate> map = new LinkedHashMap<>(Math.max(16, (int) (entries.length / .75F) + 1));
+        for (int i = 0; i < entries.length; i++) {
+            map.put(entries[i].name, templates[i]);
+        }
+
+        return new SqlTemplateRegistryImpl(map);
+    }
+
+    // each task writes to own range of arrays, so no synchronization is needed
+    private static class CompileAction extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Entry[] entries;
+        private final Locale locale;
+        private final SqlTemplate[] templates;
+        private final RuntimeException[] errors;
+        private final int start;
+        private final int end;
+
+        CompileAction(
+                @Nonnull Entry[] entries,
+                @Nonnull Locale locale,
+                @Nonnull SqlTemplate[] templates,
+                @Nonnull RuntimeException[] errors,
+                int start,
+                int end) {
+            this.entries = entries;
+            this.locale = locale;
+            this.templates = templates;
+            this.errors = errors;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (end - start <= THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    try {
+                        templates[i] = entries[i].compile(locale);
+                    } catch (RuntimeException e) {
+                        // all errors are reported at once
+                        errors[i] = e;
+                    }
+                }
+                return;
+            }
+
+            final int middle = (start + end) >>> 1;
+            invokeAll(
+                    new CompileAction(entries, locale, templates, errors, start, middle),
+                    new CompileAction(entries, locale, templates, errors, middle, end)
+            );
+        }
+    }
+
+    private final Map<String, SqlTemplate> mTemplates;
+    private final Set<String> mNames;
+
+    SqlTemplateRegistryImpl(@Nonnull Map<String, SqlTemplate> templates) {
+        mTemplates = templates;
+        mNames = Collections.unmodifiableSet(templates.keySet());
+    }
+
+    @Nonnull
+    @Override
+    public SqlTemplate template(@Nonnull String name) {
+        final SqlTemplate template = mTemplates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Registry has no template: `" + name + "`");
+        }
+        return template;
+    }
+
+    @Override
+    public boolean contains(@Nonnull String name) {
+        return mTemplates.containsKey(name);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> names() {
+        return mNames;
+    }
+
+    @Override
+    public int size() {
+        return mTemplates.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplateRegistry{" +
+                "names=" + mNames +
+                '}';
+    }
+}
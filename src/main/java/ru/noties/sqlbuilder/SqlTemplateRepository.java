@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Named templates loaded from SQL files. Each statement in a file starts with a `-- name: ` comment line,
+ * text before the first such line is ignored:
+ * <pre>
+ * -- name: findUser
+ * select * from users where id = ?{id}
+ *
+ * -- name: deleteUser
+ * delete from users where id = ?{id}
+ * </pre>
+ * Files are memory-mapped and are not read into memory as a whole, only boundaries of statements
+ * are detected when a repository is loaded. A statement is decoded (as UTF-8) and compiled into
+ * a {@link SqlTemplate} lazily on the first lookup, after that the same template is returned.
+ *
+ * This class is thread-safe.
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class SqlTemplateRepository {
+
+    /**
+     * The same as {@link #load(Locale, Path...)} with `null` as a locale parameter
+     */
+    @Nonnull
+    public static SqlTemplateRepository load(@Nonnull Path... paths) throws IOException, IllegalStateException {
+        return load(null, paths);
+    }
+
+    /**
+     * @param locale to be used by templates, if null {@link Locale#US} is used
+     * @param paths of SQL files
+     * @return a repository with statements of all files
+     * @throws IOException if a file cannot be read
+     * @throws IllegalStateException if a statement name is used more than once or a statement has no text
+     */
+    @Nonnull
+    public static SqlTemplateRepository load(@Nullable Locale locale, @Nonnull Path... paths)
+            throws IOException, IllegalStateException {
+        return SqlTemplateRepositoryImpl.map(SqlTemplateImpl.locale(locale), paths);
+    }
+
+    /**
+     * @param name of a statement
+     * @return compiled template of a statement
+     * @throws IllegalArgumentException if there is no statement with specified name
+     * @throws IllegalStateException if statement cannot be parsed
+     */
+    @Nonnull
+    public abstract SqlTemplate template(@Nonnull String name) throws IllegalArgumentException, IllegalStateException;
+
+    /**
+     * @return a new {@link SqlStatementBuilder} for a named statement
+     * @see #template(String)
+     */
+    @Nonnull
+    public SqlStatementBuilder newBuilder(@Nonnull String name) throws IllegalArgumentException, IllegalStateException {
+        return template(name).newBuilder();
+    }
+
+    /**
+     * @return true if repository has a statement with specified name
+     */
+    public abstract boolean contains(@Nonnull String name);
+
+    /**
+     * @return names of all statements in order of their appearance
+     */
+    @Nonnull
+    public abstract Set<String> names();
+
+    /**
+     * @return number of statements
+     */
+    public abstract int size();
+}
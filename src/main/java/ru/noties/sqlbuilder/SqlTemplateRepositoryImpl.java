@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class SqlTemplateRepositoryImpl extends SqlTemplateRepository {
+
+    private static final byte[] NAME_PREFIX = "name:".getBytes(StandardCharsets.US_ASCII);
+
+    @Nonnull
+    static SqlTemplateRepository map(@Nonnull Locale locale, @Nonnull Path... paths) throws IOException {
+
+        final Map<String, Integer> ids = new LinkedHashMap<>();
+        final List<ByteBuffer> statements = new ArrayList<>();
+
+        for (Path path: paths) {
+
+            final ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+            }
+
+            split(path, buffer, ids, statements);
+        }
+
+        return new SqlTemplateRepositoryImpl(locale, ids, statements);
+    }
+
+    // finds `-- name: ` lines and adds a slice of the buffer (between the name line and the next one)
+    // for each statement
+    private static void split(
+            @Nonnull Path path,
+            @Nonnull ByteBuffer buffer,
+            @Nonnull Map<String, Integer> ids,
+            @Nonnull List<ByteBuffer> statements) {
+
+        final int limit = buffer.limit();
+
+        String name = null;
+        int start = -1;
+
+        int lineStart = 0;
+
+        while (lineStart < limit) {
+
+            int lineEnd = lineStart;
+            while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                lineEnd += 1;
+            }
+
+            final int nameStart = nameStart(buffer, lineStart, lineEnd);
+            if (nameStart != -1) {
+
+                if (name != null) {
+                    add(path, buffer, name, start, lineStart, ids, statements);
+                }
+
+                int nameEnd = nameStart;
+                while (nameEnd < lineEnd && !isWhitespace(buffer.get(nameEnd))) {
+                    nameEnd += 1;
+                }
+
+                if (nameEnd == nameStart) {
+                    throw new IllegalStateException("Statement has no name at byte: `" + lineStart + "`. " +
+                            "File: `" + path + "`");
+                }
+
+                name = ascii(buffer, nameStart, nameEnd);
+                start = lineEnd;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        if (name != null) {
+            add(path, buffer, name, start, limit, ids, statements);
+        }
+    }
+
+    private static void add(
+            @Nonnull Path path,
+            @Nonnull ByteBuffer buffer,
+            @Nonnull String name,
+            int start,
+            int end,
+            @Nonnull Map<String, Integer> ids,
+            @Nonnull List<ByteBuffer> statements) {
+
+        // trim whitespace (UTF-8 multi-byte sequences never contain ascii bytes)
+        while (start < end && isWhitespace(buffer.get(start))) {
+            start += 1;
+        }
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end -= 1;
+        }
+
+        if (start == end) {
+            throw new IllegalStateException("Statement has no text: `" + name + "`. File: `" + path + "`");
+        }
+
+        if (ids.containsKey(name)) {
+            throw new IllegalStateException("Statement name is used more than once: `" + name + "`. " +
+                    "File: `" + path + "`");
+        }
+
+        final ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        slice.position(start);
+
+        ids.put(name, statements.size());
+        statements.add(slice.slice());
+    }
+
+    // returns start of a name if a line is `-- name: <name>` (spaces are optional), -1 otherwise
+    private static int nameStart(@Nonnull ByteBuffer buffer, int start, int end) {
+
+        int i = skipWhitespace(buffer, start, end);
+
+        if (end - i < 2
+                || buffer.get(i) != '-'
+                || buffer.get(i + 1) != '-') {
+            return -1;
+        }
+
+        i = skipWhitespace(buffer, i + 2, end);
+
+        if (end - i < NAME_PREFIX.length) {
+            return -1;
+        }
+
+        for (byte b: NAME_PREFIX) {
+            if (buffer.get(i++) != b) {
+                return -1;
+            }
+        }
+
+        return skipWhitespace(buffer, i, end);
+    }
+
+    private static int skipWhitespace(@Nonnull ByteBuffer buffer, int start, int end) {
+        while (start < end && isWhitespace(buffer.get(start))) {
+            start += 1;
+        }
+        return start;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    @Nonnull
+    private static String ascii(@Nonnull ByteBuffer buffer, int start, int end) {
+        final char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = (char) (buffer.get(i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    private final Locale mLocale;
+    private final Map<String, Integer> mIds;
+    private final Set<String> mNames;
+
+    // bytes of each statement (not decoded until the first lookup)
+    private final ByteBuffer[] mStatements;
+
+    // compiled templates by statement id. If multiple threads race here a statement is compiled more
+    // than once, but only the first compiled template is kept
+    private final AtomicReferenceArray<SqlTemplate> mTemplates;
+
+    SqlTemplateRepositoryImpl(
+            @Nonnull Locale locale,
+            @Nonnull Map<String, Integer> ids,
+            @Nonnull List<ByteBuffer> statements) {
+        mLocale = locale;
+        mIds = ids;
+        mNames = Collections.unmodifiableSet(ids.keySet());
+        mStatements = statements.toArray(new ByteBuffer[statements.size()]);
+        mTemplates = new AtomicReferenceArray<>(mStatements.length);
+    }
+
+    @Nonnull
+    @Override
+    public SqlTemplate template(@Nonnull String name) {
+
+        final Integer id = mIds.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("Repository has no statement: `" + name + "`");
+        }
+
+        SqlTemplate template = mTemplates.get(id);
+        if (template == null) {
+            template = SqlTemplate.create(decode(name, mStatements[id]), mLocale);
+            if (!mTemplates.compareAndSet(id, null, template)) {
+                template = mTemplates.get(id);
+            }
+        }
+
+        return template;
+    }
+
+    @Nonnull
+    private static String decode(@Nonnull String name, @Nonnull ByteBuffer bytes) {
+        try {
+            // duplicate, so position of a shared buffer is not changed
+            return StandardCharsets.UTF_8.newDecoder().decode(bytes.duplicate()).toString();
+        } catch (CharacterCodingException e) {
+            throw new IllegalStateException("Statement is not valid UTF-8: `" + name + "`", e);
+        }
+    }
+
+    @Override
+    public boolean contains(@Nonnull String name) {
+        return mIds.containsKey(name);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> names() {
+        return mNames;
+    }
+
+    @Override
+    public int size() {
+        return mStatements.length;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplateRepository{" +
+                "names=" + mNames +
+                ", locale=" + mLocale +
+                '}';
+    }
+}
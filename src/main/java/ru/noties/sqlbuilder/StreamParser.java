@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Reader;
+
+// the same rules as InputDataImpl parser has, but input is processed char by char, so a chunk
+// boundary can be anywhere (for example between `$` and `{`)
+class StreamParser {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // placeholders are short, a longer one most likely means that a placeholder is not closed
+    // (and the whole input would be buffered)
+    private static final int MAX_NAME_LENGTH = 1024;
+
+    private final SqlStreams.Handler mHandler;
+
+    // literal text that is not reported yet
+    private final char[] mLiteral = new char[BUFFER_SIZE];
+    private int mLiteralLength;
+
+    StreamParser(@Nonnull SqlStreams.Handler handler) {
+        mHandler = handler;
+    }
+
+    void parse(@Nonnull Reader reader) throws IOException {
+
+        final char[] buffer = new char[BUFFER_SIZE];
+        final StringBuilder name = new StringBuilder();
+
+        // `$`, `?` or `*` that can start a placeholder (if followed by `{`)
+        char pending = 0;
+
+        // not 0 if we are inside a placeholder, contains its first char
+        char placeholder = 0;
+
+        long index = 0L;
+        long start = -1L;
+
+        int read;
+        char c;
+
+        while ((read = reader.read(buffer)) != -1) {
+
+            for (int i = 0; i < read; i++, index++) {
+
+                c = buffer[i];
+
+                if (placeholder != 0) {
+
+                    if ('{' == c) {
+                        throw new IllegalStateException("Nested placeholders detected at index: `" + index + "`");
+                    }
+
+                    if ('}' == c) {
+
+                        if (name.length() == 0) {
+                            throw new IllegalStateException("Named placeholder has empty name at index: `" + start + "`");
+                        }
+
+                        argument(placeholder, name.toString());
+
+                        name.setLength(0);
+                        placeholder = 0;
+                        continue;
+                    }
+
+                    if (name.length() == MAX_NAME_LENGTH) {
+                        throw new IllegalStateException("Placeholder is too long (most likely it's not closed) " +
+                                "at index: `" + start + "`");
+                    }
+
+                    name.append(c);
+                    continue;
+                }
+
+                if (pending != 0) {
+
+                    if ('{' == c) {
+
+                        if ('*' == pending) {
+                            throw new IllegalStateException("Repeated groups are not supported by streaming, " +
+                                    "group at index: `" + (index - 1) + "`");
+                        }
+
+                        flush();
+
+                        placeholder = pending;
+                        pending = 0;
+                        start = index - 1;
+                        continue;
+                    }
+
+                    append(pending);
+                    pending = 0;
+                }
+
+                if ('$' == c || '?' == c || '*' == c) {
+                    pending = c;
+                } else if ('{' != c || index > 0) {
+                    // `{` as the first char is dropped (the same as InputDataImpl does)
+                    append(c);
+                }
+            }
+        }
+
+        if (placeholder != 0) {
+            throw new IllegalStateException("Bind argument is not closed at index: `" + start + "`");
+        }
+
+        if (pending != 0) {
+            append(pending);
+        }
+
+        flush();
+    }
+
+    private void argument(char placeholder, @Nonnull String value) throws IOException {
+        if ('?' == placeholder) {
+            mHandler.bindArgument(value);
+        } else {
+            final String[] split = value.split(" ");
+            if (split.length == 1) {
+                mHandler.formatArgument("%s", value);
+            } else {
+                mHandler.formatArgument(split[0], split[1]);
+            }
+        }
+    }
+
+    private void append(char c) throws IOException {
+        if (mLiteralLength == mLiteral.length) {
+            // a `%%` or `%n` escape is not split between chunks: if literal ends with unpaired `%`
+            // it's moved to the next chunk
+            int percents = 0;
+            while (percents < mLiteralLength && '%' == mLiteral[mLiteralLength - 1 - percents]) {
+                percents += 1;
+            }
+            if ((percents & 1) == 1) {
+                mLiteralLength -= 1;
+                flush();
+                mLiteral[mLiteralLength++] = '%';
+            } else {
+                flush();
+            }
+        }
+        mLiteral[mLiteralLength++] = c;
+    }
+
+    private void flush() throws IOException {
+        if (mLiteralLength > 0) {
+            mHandler.literal(mLiteral, 0, mLiteralLength);
+            mLiteralLength = 0;
+        }
+    }
+}
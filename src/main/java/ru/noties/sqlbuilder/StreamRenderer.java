@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.Map;
+
+class StreamRenderer implements SqlStreams.Handler {
+
+    // what `%n` is formatted to
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final Writer mWriter;
+    private final Map<String, ?> mArguments;
+    private final Locale mLocale;
+    private final Collection<Object> mBindArguments;
+
+    // created only if there is an argument that cannot be written directly
+    private Formatter mFormatter;
+
+    StreamRenderer(
+            @Nonnull Writer writer,
+            @Nonnull Map<String, ?> arguments,
+            @Nonnull Locale locale,
+            @Nullable Collection<Object> bindArguments) {
+        mWriter = writer;
+        mArguments = arguments;
+        mLocale = locale;
+        mBindArguments = bindArguments;
+    }
+
+    // literal is a Formatter pattern (as in SqlStatementBuilder with format arguments), so `%%` and `%n`
+    // are unescaped. Parser does not split an escape between chunks
+    @Override
+    public void literal(@Nonnull char[] chars, int offset, int length) throws IOException {
+
+        int from = offset;
+
+        for (int i = offset, end = offset + length - 1; i < end; i++) {
+            if ('%' == chars[i]) {
+                final char next = chars[i + 1];
+                if ('%' == next || 'n' == next) {
+                    mWriter.write(chars, from, i - from);
+                    if ('%' == next) {
+                        mWriter.write('%');
+                    } else {
+                        mWriter.write(LINE_SEPARATOR);
+                    }
+                    i += 1;
+                    from = i + 1;
+                }
+            }
+        }
+
+        mWriter.write(chars, from, offset + length - from);
+    }
+
+    @Override
+    public void formatArgument(@Nonnull String modifier, @Nonnull String name) throws IOException {
+
+        final Object value = value(name);
+
+        if ("%s".equals(modifier) && !(value instanceof Formattable)) {
+            mWriter.write(String.valueOf(value));
+            return;
+        }
+
+        if (mFormatter == null) {
+            mFormatter = new Formatter(mWriter, mLocale);
+        }
+
+        mFormatter.format(mLocale, modifier, value);
+
+        // Formatter swallows exceptions of its Appendable
+        final IOException exception = mFormatter.ioException();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public void bindArgument(@Nonnull String name) throws IOException {
+        if (mBindArguments != null) {
+            mBindArguments.add(value(name));
+        }
+        mWriter.write('?');
+    }
+
+    @Nullable
+    private Object value(@Nonnull String name) {
+        final Object value = mArguments.get(name);
+        if (value == null && !mArguments.containsKey(name)) {
+            throw new IllegalStateException("Named argument is not bound: `" + name + "`");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counter that is incremented by many threads: each thread increments a cell of its stripe (as
+// `SqlTemplateMetricsImpl` does), so concurrent increments do not contend on a single value
+final class StripedCounter {
+
+    // 8 longs per stripe, so stripes do not share cache lines
+    private static final int STRIPE_SHIFT = 3;
+
+    private final AtomicLongArray mCells = new AtomicLongArray(SqlTemplateMetricsImpl.STRIPES << STRIPE_SHIFT);
+
+    void increment() {
+        mCells.getAndIncrement((Platform.threadHash() & (SqlTemplateMetricsImpl.STRIPES - 1)) << STRIPE_SHIFT);
+    }
+
+    long sum() {
+        long sum = 0L;
+        for (int i = 0; i < SqlTemplateMetricsImpl.STRIPES; i++) {
+            sum += mCells.get(i << STRIPE_SHIFT);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentSqlStatementBuilderTest {
+
+    @Test
+    public void simple() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.createConcurrent("select * from ${table} where id = ?{id}")
+                .bind("table", "my_table")
+                .bind("id", 33L);
+        assertEquals("select * from my_table where id = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 33L }, builder.sqlBindArguments());
+
+        // cached until bindings change
+        final SqlStatement statement = builder.statement();
+        assertSame(statement, builder.statement());
+
+        builder.bind("id", 34L);
+        assertNotSame(statement, builder.statement());
+        assertArrayEquals(new Object[] { 34L }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void notBound() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.createConcurrent("select * from ${table} where id = ?{id}")
+                .bind("table", "my_table");
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void notPresent() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.createConcurrent("select * from table")
+                .bind("not_present", 1);
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void clearBindings() {
+        final SqlStatementBuilder builder = SqlTemplate.create("select * from ${table}")
+                .newConcurrentBuilder()
+                .bind("table", "yo");
+        assertEquals("select * from yo", builder.sqlStatement());
+
+        builder.clearBindings();
+
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void emptyBindingsNotShared() {
+
+        final SqlStatementBuilder first = SqlStatementBuilder.createConcurrent("select 1 from a");
+        final SqlStatementBuilder second = SqlStatementBuilder.createConcurrent("delete from users");
+
+        assertEquals("select 1 from a", first.sqlStatement());
+        assertEquals("delete from users", second.sqlStatement());
+
+        // cleared builder must not return statement of another template either
+        second.clearBindings();
+        assertEquals("delete from users", second.sqlStatement());
+
+        first.clearBindings();
+        assertEquals("select 1 from a", first.sqlStatement());
+    }
+
+    @Test
+    public void sharedBetweenThreads() throws Throwable {
+
+        final SqlTemplate template = SqlTemplate.create("select * from table_${id} where id = ?{id}");
+        final SqlStatementBuilder builder = template.newConcurrentBuilder()
+                .bind("id", -1);
+
+        final int threads = 8;
+        final int iterations = 1000;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final List<Thread> list = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int base = t * iterations;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            builder.bind("id", base + i);
+                            final SqlStatement statement = builder.statement();
+                            // statement and arguments must belong to the same bindings
+                            final Object[] args = statement.sqlBindArguments();
+                            assertNotNull(args);
+                            assertEquals("select * from table_" + args[0] + " where id = ?", statement.sqlStatement());
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            });
+            thread.start();
+            list.add(thread);
+        }
+
+        start.countDown();
+
+        for (Thread thread: list) {
+            thread.join();
+        }
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+    }
+}
@@ -18,8 +18,11 @@ package ru.noties.sqlbuilder;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.Locale;
 
 import static org.junit.Assert.*;
 
@@ -46,8 +49,8 @@ public class InputDataTest {
             assertEquals(0, data.argumentNames().size());
 
             // whatever
-            assertEquals(0, data.formatArgIndexes("from").size());
-            assertEquals(0, data.bindArgIndexes("select").size());
+            assertEquals(0, data.formatArgIndexes("from").length);
+            assertEquals(0, data.bindArgIndexes("select").length);
         }
     }
 
@@ -149,7 +152,7 @@ public class InputDataTest {
         assertEquals(0, data.bindArgsLength());
         assertEquals(1, data.argumentNames().size());
         assertTrue(data.argumentNames().contains("table"));
-        assertEquals((Integer) 0, data.formatArgIndexes("table").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.formatArgIndexes("table"));
     }
 
     @Test
@@ -164,9 +167,7 @@ public class InputDataTest {
         assertEquals(1, data.formatArgsLength());
         assertEquals(0, data.bindArgsLength());
 
-        final Collection<Integer> indexes = data.formatArgIndexes("table");
-        assertEquals(1, indexes.size());
-        assertEquals((Integer) 0, indexes.iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.formatArgIndexes("table"));
     }
 
     @Test
@@ -186,8 +187,8 @@ public class InputDataTest {
         assertEquals(2, data.formatArgsLength());
         assertEquals(0, data.bindArgsLength());
 
-        assertEquals((Integer) 0, data.formatArgIndexes("id").iterator().next());
-        assertEquals((Integer) 1, data.formatArgIndexes("table").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.formatArgIndexes("id"));
+        assertArrayEquals(new int[] { 1 }, data.formatArgIndexes("table"));
     }
 
     @Test
@@ -202,19 +203,9 @@ public class InputDataTest {
         assertEquals(4, data.formatArgsLength());
         assertEquals(0, data.bindArgsLength());
 
-        final Collection<Integer> id = data.formatArgIndexes("id");
-        final Iterator<Integer> idIterator = id.iterator();
-        assertEquals(2, id.size());
-        assertEquals((Integer) 0, idIterator.next());
-        assertEquals((Integer) 3, idIterator.next());
-        assertFalse(idIterator.hasNext());
+        assertArrayEquals(new int[] { 0, 3 }, data.formatArgIndexes("id"));
 
-        final Collection<Integer> table = data.formatArgIndexes("table");
-        final Iterator<Integer> tableIterator = table.iterator();
-        assertEquals(2, table.size());
-        assertEquals((Integer) 1, tableIterator.next());
-        assertEquals((Integer) 2, tableIterator.next());
-        assertFalse(tableIterator.hasNext());
+        assertArrayEquals(new int[] { 1, 2 }, data.formatArgIndexes("table"));
     }
 
     @Test
@@ -230,14 +221,7 @@ public class InputDataTest {
         assertEquals(4, data.formatArgsLength());
         assertEquals(0, data.bindArgsLength());
 
-        final Collection<Integer> indexes = data.formatArgIndexes("id");
-        final Iterator<Integer> iterator = indexes.iterator();
-        assertEquals(4, indexes.size());
-        assertEquals((Integer) 0, iterator.next());
-        assertEquals((Integer) 1, iterator.next());
-        assertEquals((Integer) 2, iterator.next());
-        assertEquals((Integer) 3, iterator.next());
-        assertFalse(iterator.hasNext());
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, data.formatArgIndexes("id"));
     }
 
     @Test
@@ -250,7 +234,7 @@ public class InputDataTest {
         assertEquals(1, data.bindArgsLength());
         assertEquals(1, data.argumentNames().size());
         assertTrue(data.argumentNames().contains("table"));
-        assertEquals((Integer) 0, data.bindArgIndexes("table").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.bindArgIndexes("table"));
     }
 
     @Test
@@ -264,7 +248,7 @@ public class InputDataTest {
         assertTrue(data.argumentNames().contains("id"));
         assertEquals(1, data.bindArgsLength());
         assertEquals(0, data.formatArgsLength());
-        assertEquals((Integer) 0, data.bindArgIndexes("id").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.bindArgIndexes("id"));
     }
 
     @Test
@@ -276,17 +260,9 @@ public class InputDataTest {
         assertEquals(2, data.bindArgsLength());
         assertEquals(0, data.formatArgsLength());
 
-        final Collection<Integer> id = data.bindArgIndexes("id");
-        final Iterator<Integer> idIterator = id.iterator();
-        assertEquals(1, id.size());
-        assertEquals((Integer) 0, idIterator.next());
-        assertFalse(idIterator.hasNext());
+        assertArrayEquals(new int[] { 0 }, data.bindArgIndexes("id"));
 
-        final Collection<Integer> name = data.bindArgIndexes("name");
-        final Iterator<Integer> nameIterator = name.iterator();
-        assertEquals(1, name.size());
-        assertEquals((Integer) 1, nameIterator.next());
-        assertFalse(nameIterator.hasNext());
+        assertArrayEquals(new int[] { 1 }, data.bindArgIndexes("name"));
     }
 
     @Test
@@ -305,20 +281,9 @@ public class InputDataTest {
         assertTrue(names.contains("id"));
         assertTrue(names.contains("name"));
 
-        final Collection<Integer> id = data.bindArgIndexes("id");
-        final Iterator<Integer> idIterator = id.iterator();
-        assertEquals(3, id.size());
-        assertEquals((Integer) 0, idIterator.next());
-        assertEquals((Integer) 1, idIterator.next());
-        assertEquals((Integer) 3, idIterator.next());
-        assertFalse(idIterator.hasNext());
+        assertArrayEquals(new int[] { 0, 1, 3 }, data.bindArgIndexes("id"));
 
-        final Collection<Integer> name = data.bindArgIndexes("name");
-        final Iterator<Integer> nameIterator = name.iterator();
-        assertEquals(2, name.size());
-        assertEquals((Integer) 2, nameIterator.next());
-        assertEquals((Integer) 4, nameIterator.next());
-        assertFalse(nameIterator.hasNext());
+        assertArrayEquals(new int[] { 2, 4 }, data.bindArgIndexes("name"));
     }
 
     @Test
@@ -331,8 +296,8 @@ public class InputDataTest {
         assertEquals(1, data.bindArgsLength());
         assertEquals(1, data.formatArgsLength());
 
-        assertEquals((Integer) 0, data.bindArgIndexes("id").iterator().next());
-        assertEquals((Integer) 0, data.formatArgIndexes("table").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.bindArgIndexes("id"));
+        assertArrayEquals(new int[] { 0 }, data.formatArgIndexes("table"));
 
         assertTrue(data.argumentNames().contains("table"));
         assertTrue(data.argumentNames().contains("id"));
@@ -348,19 +313,9 @@ public class InputDataTest {
         assertEquals(2, data.formatArgsLength());
         assertEquals(2, data.bindArgsLength());
 
-        final Collection<Integer> table = data.formatArgIndexes("table");
-        final Iterator<Integer> tableIterator = table.iterator();
-        assertEquals(2, table.size());
-        assertEquals((Integer) 0, tableIterator.next());
-        assertEquals((Integer) 1, tableIterator.next());
-        assertFalse(tableIterator.hasNext());
+        assertArrayEquals(new int[] { 0, 1 }, data.formatArgIndexes("table"));
 
-        final Collection<Integer> id = data.bindArgIndexes("id");
-        final Iterator<Integer> idIterator = id.iterator();
-        assertEquals(2, table.size());
-        assertEquals((Integer) 0, idIterator.next());
-        assertEquals((Integer) 1, idIterator.next());
-        assertFalse(idIterator.hasNext());
+        assertArrayEquals(new int[] { 0, 1 }, data.bindArgIndexes("id"));
     }
 
     @Test
@@ -369,7 +324,235 @@ public class InputDataTest {
         assertEquals(2, data.argsLength());
         assertEquals(1, data.formatArgsLength());
         assertEquals(1, data.bindArgsLength());
-        assertEquals((Integer) 0, data.formatArgIndexes("t").iterator().next());
-        assertEquals((Integer) 0, data.bindArgIndexes("i").iterator().next());
+        assertArrayEquals(new int[] { 0 }, data.formatArgIndexes("t"));
+        assertArrayEquals(new int[] { 0 }, data.bindArgIndexes("i"));
+    }
+
+    @Test
+    public void argumentIds() {
+
+        final InputData data = InputData.create("select ${table}.* from ${table} where id = ?{id} or name = ?{name} or ${table}.id = ?{id}");
+
+        assertEquals(0, data.argumentId("table"));
+        assertEquals(1, data.argumentId("id"));
+        assertEquals(2, data.argumentId("name"));
+        assertEquals(-1, data.argumentId("not_present"));
+
+        assertEquals("table", data.argumentName(0));
+        assertEquals("id", data.argumentName(1));
+        assertEquals("name", data.argumentName(2));
+
+        assertArrayEquals(new int[] { 0, 3, 3, 3 }, data.formatArgOffsets());
+        assertArrayEquals(new int[] { 0, 1, 2 }, data.formatArgPositions());
+
+        assertArrayEquals(new int[] { 0, 0, 2, 3 }, data.bindArgOffsets());
+        assertArrayEquals(new int[] { 0, 2, 1 }, data.bindArgPositions());
+    }
+
+    @Test
+    public void renderSameAsFormat() {
+
+        final Formattable formattable = new Formattable() {
+            @Override
+            public void formatTo(Formatter formatter, int flags, int width, int precision) {
+                formatter.format("formattable");
+            }
+        };
+
+        final Object[][] values = {
+                { "table", 42, 42.0D },
+                { null, (short) -3, 7.5F },
+                { formattable, Long.MIN_VALUE, 1.5D },
+                { new StringBuilder("builder"), Integer.MAX_VALUE, -0.25F }
+        };
+
+        final String[] inputs = {
+                "select ${a} from ${%s a} where id = ${%d b} and ratio > ${%.2f c} and ${%S a} = ?{a}",
+                "select ${%10s a}, ${%-5d b}, ${%e c} from table where ${%d b} != 0",
+                "${a}${b}${c}",
+                // literals with `%` are processed by formatter
+                "select * from ${a} where name like '%%${b}%%' and ratio = ${c}"
+        };
+
+        final Locale[] locales = {
+                Locale.US,
+                Locale.GERMANY,
+                new Locale("th", "TH", "TH") // locale with own digits
+        };
+
+        for (String input: inputs) {
+            final InputData data = InputData.create(input);
+            for (Locale locale: locales) {
+                for (Object[] value: values) {
+                    final Object[] args = formatArgs(data, value);
+                    assertEquals(
+                            String.format(locale, data.formattedInput(), args),
+                            data.render(locale, Locale.US.equals(locale), args, null, 1, null)
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void renderNotSingleArgumentModifier() {
+        final InputData data = InputData.create("select ${%n a}, ${b} from ${%1$s c}");
+        final Object[] args = { "first", "second", "third" };
+        assertEquals(String.format(Locale.US, data.formattedInput(), args), data.render(Locale.US, true, args, null, 1, null));
+    }
+
+    @Test
+    public void group() {
+        final InputData data = InputData.create("insert into ${table}(a, b) values *{(?{a}, ?{b})} where c = ?{c}");
+        assertEquals("insert into %s(a, b) values (?, ?) where c = ?", data.formattedInput());
+        assertEquals("insert into %s(a, b) values (?, ?) where c = ?", data.formattedInput(1));
+        assertEquals("insert into %s(a, b) values (?, ?), (?, ?), (?, ?) where c = ?", data.formattedInput(3));
+        assertEquals(1, data.groupArgsStart());
+        assertEquals(3, data.groupArgsEnd());
+        assertEquals(0, data.groupBindArgsStart());
+        assertEquals(2, data.groupBindArgsLength());
+        assertArrayEquals(new int[] { 2 }, data.bindArgIndexes("c"));
+        assertEquals(
+                "insert into t(a, b) values (?, ?), (?, ?) where c = ?",
+                data.render(Locale.US, true, new Object[] { "t" }, null, 2, null)
+        );
+    }
+
+    @Test
+    public void groupLiteralBraces() {
+        // braces inside a group are balanced, so the first `}` of a literal does not close the group
+        final InputData data = InputData.create("insert into t(a, j) values *{(?{a}, '{}')}");
+        assertEquals("insert into t(a, j) values (?, '{}'), (?, '{}')", data.formattedInput(2));
+        assertEquals(
+                "insert into t(a, j) values (?, '{\"k\": {}}'), (?, '{\"k\": {}}')",
+                InputData.create("insert into t(a, j) values *{(?{a}, '{\"k\": {}}')}").formattedInput(2)
+        );
+        try {
+            InputData.create("insert into t(a, j) values *{(?{a}, '{')}");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void groupCached() {
+        final InputData data = InputData.create("insert into t(a) values *{(?{a})}");
+        assertSame(data.formattedInput(4), data.formattedInput(4));
+        assertEquals(data.formattedInput(100), data.formattedInput(100));
+    }
+
+    @Test
+    public void noGroup() {
+        final InputData data = InputData.create("select * from t where a = ?{a}");
+        assertEquals(0, data.groupBindArgsLength());
+        assertEquals("select * from t where a = ?", data.formattedInput(3));
+    }
+
+    @Test
+    public void groupErrors() {
+        final String[] inputs = {
+                "values *{(?{a}) *{(?{b})}}",
+                "values *{(?{a})}, *{(?{b})}",
+                "values *{(1, 2)}",
+                "values *{(${a})}",
+                "values *{(?{a})",
+                "values *{(?{a})} where a = ?{a}",
+                "values ?{a}, *{(?{a})}"
+        };
+        for (String input: inputs) {
+            try {
+                InputData.create(input);
+                //noinspection ConstantConditions
+                assertTrue(input, false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    @Test
+    public void literalGroupStart() {
+        // `*{` always starts a group (before groups were added it was kept as text)
+        try {
+            InputData.create("select * from t where name ~ 'a*{2}'");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+        assertEquals(
+                "select * from t where name ~ 'a*{2}'",
+                SqlStatementBuilder.create("select * from t where name ~ ${pattern}")
+                        .bind("pattern", "'a*{2}'")
+                        .sqlStatement()
+        );
+    }
+
+    // values for `a`, `b` and `c` arguments
+    private static Object[] formatArgs(InputData data, Object[] values) {
+        final Object[] args = new Object[data.formatArgsLength()];
+        final String[] names = { "a", "b", "c" };
+        for (int i = 0; i < names.length; i++) {
+            for (int index: data.formatArgIndexes(names[i])) {
+                args[index] = values[i];
+            }
+        }
+        return args;
+    }
+
+    @Test
+    public void compiledForm() {
+
+        final String[] in = {
+                "select * from my_table",
+                "select * from ${table} where id = ?{id} and name = ?{name} or id = ?{id}",
+                "select ${%.2f value} from ${table} where a = '%%'",
+                "insert into ${table}(a, b) values *{(?{a}, ?{b})} returning ?{c}",
+                "where id in ?{ids}"
+        };
+
+        for (String input: in) {
+
+            final InputDataImpl data = (InputDataImpl) InputData.create(input);
+            final InputData restored = InputData.create(data.compiledStrings(), data.compiledTable());
+
+            assertArrayEquals(data.compiledStrings(), ((InputDataImpl) restored).compiledStrings());
+            assertArrayEquals(data.compiledTable(), ((InputDataImpl) restored).compiledTable());
+
+            assertEquals(data.formattedInput(), restored.formattedInput());
+            assertEquals(data.formattedInput(3), restored.formattedInput(3));
+            assertEquals(data.literalLength(), restored.literalLength());
+            assertEquals(data.argsLength(), restored.argsLength());
+            assertEquals(data.argumentNames(), restored.argumentNames());
+            assertEquals(data.groupArgsStart(), restored.groupArgsStart());
+            assertEquals(data.groupArgsEnd(), restored.groupArgsEnd());
+            for (String name: data.argumentNames()) {
+                assertEquals(data.argumentId(name), restored.argumentId(name));
+                assertArrayEquals(data.bindArgIndexes(name), restored.bindArgIndexes(name));
+                assertArrayEquals(data.formatArgIndexes(name), restored.formatArgIndexes(name));
+            }
+
+            final Object[] formatArgs = new Object[data.formatArgsLength()];
+            Arrays.fill(formatArgs, 42.0D);
+            assertEquals(
+                    data.render(Locale.US, true, formatArgs, null, 2, null),
+                    restored.render(Locale.US, true, formatArgs, null, 2, null));
+        }
+    }
+
+    @Test
+    public void compiledFormVersion() {
+        final InputDataImpl data = (InputDataImpl) InputData.create("select * from ${table}");
+        final int[] table = data.compiledTable();
+        table[0] = InputDataImpl.COMPILED_VERSION + 1;
+        try {
+            InputData.create(data.compiledStrings(), table);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
     }
 }
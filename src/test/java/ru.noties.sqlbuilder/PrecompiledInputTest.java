@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrecompiledInputTest {
+
+    @Test
+    public void restoredByPrecompiled() {
+
+        final String input = "insert into ${table}(id, name) values *{(?{id}, ?{name})}";
+        final PrecompiledInput compiled = PrecompiledInput.compile(input);
+
+        assertEquals(3, compiled.slotCount());
+        assertEquals("table", compiled.slotName(0));
+        assertEquals("id", compiled.slotName(1));
+        assertEquals("name", compiled.slotName(2));
+        assertTrue(compiled.hasGroup());
+        assertFalse(PrecompiledInput.compile("select * from ${table}").hasGroup());
+
+        final SqlTemplate template = SqlTemplate.precompiled(input, null, compiled.strings(), compiled.table());
+        assertEquals(
+                SqlTemplate.create(input).newBuilder().bind("table", "t").bind("id", 1).bind("name", "a").sqlStatement(),
+                template.newBuilder().bind("table", "t").bind("id", 1).bind("name", "a").sqlStatement()
+        );
+    }
+
+    @Test
+    public void malformedInputThrows() {
+        try {
+            PrecompiledInput.compile("select * from ${table");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+}
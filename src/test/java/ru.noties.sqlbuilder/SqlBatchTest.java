@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SqlBatchTest {
+
+    @Test
+    public void rows() {
+
+        final SqlBatch batch = SqlStatementBuilder.create("insert into ${table}(id, name) values (?{id}, ?{name})")
+                .bind("table", "users")
+                .batch();
+
+        assertEquals("insert into users(id, name) values (?, ?)", batch.sqlStatement());
+
+        for (int i = 0; i < 3; i++) {
+            batch.bind("id", i)
+                    .bind("name", "name_" + i)
+                    .addRow();
+        }
+
+        assertEquals(3, batch.size());
+        assertArrayEquals(new Object[] { 1, "name_1" }, batch.sqlBindArguments(1));
+        assertArrayEquals(new Object[][] {
+                { 0, "name_0" },
+                { 1, "name_1" },
+                { 2, "name_2" }
+        }, batch.sqlBindArgumentsRows());
+
+        batch.clear();
+        assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void defaultsFromBuilder() {
+
+        final SqlTemplate template = SqlTemplate.create("update users set status = ?{status} where id = ?{id}");
+        final int id = template.slot("id");
+
+        final SqlBatch batch = template.newBuilder()
+                .bind("status", "active")
+                .batch();
+
+        batch.bind(id, 1L).addRow();
+        batch.bind(id, 2L).bind("status", "blocked").addRow();
+        batch.bind(id, 3L).addRow();
+
+        assertArrayEquals(new Object[][] {
+                { "active", 1L },
+                { "blocked", 2L },
+                { "active", 3L }
+        }, batch.sqlBindArgumentsRows());
+    }
+
+    @Test
+    public void formatArgumentsMustBeBound() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into ${table}(id) values (?{id})");
+        try {
+            builder.batch();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void formatArgumentCannotBeBoundForRow() {
+        final SqlBatch batch = SqlStatementBuilder.create("select * from ${table} where table_name = ?{table}")
+                .bind("table", "users")
+                .batch();
+        assertArrayEquals(new Object[] { "users" }, batch.addRow().sqlBindArguments(0));
+        try {
+            batch.bind("table", "another");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void collectionCannotBeBound() {
+
+        // bound in the builder before batch is created
+        try {
+            SqlStatementBuilder.create("delete from t where id in (?{ids})")
+                    .bind("ids", Arrays.asList(1L, 2L))
+                    .batch();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        // bound for a row
+        final SqlBatch batch = SqlStatementBuilder.create("delete from t where id in (?{ids})").batch();
+        try {
+            batch.bind("ids", new Object[] { 1L, 2L });
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void rowNotBound() {
+        final SqlBatch batch = SqlStatementBuilder.create("insert into users(id, name) values (?{id}, ?{name})")
+                .batch();
+        batch.bind("id", 1);
+        try {
+            batch.addRow();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void notPresent() {
+        final SqlBatch batch = SqlStatementBuilder.create("insert into users(id) values (?{id})")
+                .batch();
+        try {
+            batch.bind("not_present", 1);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void builderChangesDoNotAffectBatch() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into ${table}(id) values (?{id})")
+                .bind("table", "users")
+                .bind("id", 1);
+        final SqlBatch batch = builder.batch();
+        builder.bind("table", "another").bind("id", 2);
+        assertEquals("insert into users(id) values (?)", batch.sqlStatement());
+        assertArrayEquals(new Object[] { 1 }, batch.addRow().sqlBindArguments(0));
+    }
+}
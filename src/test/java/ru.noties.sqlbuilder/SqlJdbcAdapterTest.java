@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SqlJdbcAdapterTest {
+
+    private Connection connection;
+    private SqlJdbcAdapter adapter;
+
+    @Before
+    public void before() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:");
+        connection.createStatement().execute("create table users(id bigint, name varchar(64), age int, active boolean)");
+        adapter = SqlJdbcAdapter.create(connection, 2);
+    }
+
+    @After
+    public void after() throws SQLException {
+        adapter.close();
+        connection.close();
+    }
+
+    @Test
+    public void insertSelect() throws SQLException {
+
+        final SqlStatementBuilder insert = SqlStatementBuilder.create(
+                "insert into ${table}(id, name, age, active) values (?{id}, ?{name}, ?{age}, ?{active})");
+        insert.bind("table", "users");
+
+        for (int i = 0; i < 3; i++) {
+            insert.bindLong("id", i)
+                    .bind("name", "name" + i)
+                    .bindInt("age", 20 + i)
+                    .bindBoolean("active", i % 2 == 0);
+            assertEquals(1, adapter.prepare(insert).executeUpdate());
+        }
+
+        final SqlStatementBuilder select = SqlStatementBuilder.create(
+                "select id, name, age from users where active = ?{active} and age > ?{age} order by id");
+        select.bind("active", true).bind("age", 0);
+
+        final ResultSet resultSet = adapter.prepare(select).executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(0L, resultSet.getLong(1));
+        assertEquals("name0", resultSet.getString(2));
+        assertEquals(20, resultSet.getInt(3));
+        assertTrue(resultSet.next());
+        assertEquals(2L, resultSet.getLong(1));
+        assertFalse(resultSet.next());
+        resultSet.close();
+    }
+
+    @Test
+    public void statementCached() throws SQLException {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from users where id = ?{id}");
+        final PreparedStatement first = adapter.prepare(builder.bind("id", 1L));
+        final PreparedStatement second = adapter.prepare(builder.bind("id", 2L));
+        assertSame(first, second);
+    }
+
+    @Test
+    public void statementEvicted() throws SQLException {
+        final PreparedStatement first = adapter.prepare(SqlStatementBuilder.create("select 1").statement());
+        adapter.prepare(SqlStatementBuilder.create("select 2").statement());
+        adapter.prepare(SqlStatementBuilder.create("select 3").statement());
+        assertTrue(first.isClosed());
+    }
+
+    @Test
+    public void sameArgumentMultipleTimes() throws SQLException {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select ?{a} + ?{a} + ?{b}");
+        builder.bind("a", 1).bind("b", 2);
+        final ResultSet resultSet = adapter.prepare(builder).executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(4, resultSet.getInt(1));
+        resultSet.close();
+    }
+
+    @Test
+    public void expandedCollection() throws SQLException {
+
+        final SqlStatementBuilder insert = SqlStatementBuilder.create(
+                "insert into users(id, name) values *{(?{id}, ?{name})}");
+        for (long i = 0; i < 5; i++) {
+            insert.bind("id", i).bind("name", null).addRow();
+        }
+        assertEquals(5, adapter.prepare(insert).executeUpdate());
+
+        final SqlStatementBuilder select = SqlStatementBuilder.create(
+                "select count(*) from users where id in (?{ids}) and name is null");
+        select.bind("ids", Arrays.asList(1L, 3L, 4L));
+        final ResultSet resultSet = adapter.prepare(select).executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(3, resultSet.getInt(1));
+        resultSet.close();
+    }
+
+    @Test
+    public void notBound() throws SQLException {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from users where id = ?{id}");
+        try {
+            adapter.prepare(builder);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+}
@@ -18,6 +18,18 @@ package ru.noties.sqlbuilder;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
 import static org.junit.Assert.*;
 
 public class SqlStatementBuilderTest {
@@ -187,5 +199,410 @@ public class SqlStatementBuilderTest {
             assertTrue(true);
         }
     }
-}
 
+    @Test
+    public void bindArgumentChangeKeepsStatement() {
+
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table} where id = ?{id} or parent_id = ?{parent_id}")
+                .bind("table", "my_table")
+                .bind("id", 1L)
+                .bind("parent_id", 0L);
+
+        final String statement = builder.sqlStatement();
+        final Object[] arguments = builder.sqlBindArguments();
+        assertArrayEquals(new Object[] { 1L, 0L }, arguments);
+
+        builder.bind("id", 2L);
+        assertSame(statement, builder.sqlStatement());
+        assertArrayEquals(new Object[] { 2L, 0L }, builder.sqlBindArguments());
+
+        // previously returned array is not modified
+        assertArrayEquals(new Object[] { 1L, 0L }, arguments);
+    }
+
+    @Test
+    public void formatArgumentChangeRendersStatement() {
+
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table} where id = ?{id}")
+                .bind("table", "first")
+                .bind("id", 1L);
+
+        final Object[] arguments = builder.sqlBindArguments();
+        assertEquals("select * from first where id = ?", builder.sqlStatement());
+
+        builder.bind("table", "second");
+        assertEquals("select * from second where id = ?", builder.sqlStatement());
+        assertSame(arguments, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void mutableFormatArgumentBoundAgain() {
+
+        final StringBuilder table = new StringBuilder("users");
+
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${t}")
+                .bind("t", table);
+        assertEquals("select * from users", builder.sqlStatement());
+
+        // the same instance, but modified
+        table.setLength(0);
+        table.append("orders");
+        builder.bind("t", table);
+        assertEquals("select * from orders", builder.sqlStatement());
+    }
+
+    @Test
+    public void sameValuesAfterClear() {
+
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table} where id = ?{id}")
+                .bind("table", "my_table")
+                .bind("id", 1L);
+
+        final SqlStatement statement = builder.statement();
+
+        builder.clearBindings();
+        builder.bind("table", "my_table");
+
+        // not all arguments are bound after clear
+        try {
+            builder.statement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        builder.bind("id", 1L);
+        assertSame(statement, builder.statement());
+
+        builder.clearBindings();
+        builder.bind("table", "my_table");
+        builder.bind("id", 2L);
+        assertSame(statement.sqlStatement(), builder.sqlStatement());
+        assertArrayEquals(new Object[] { 2L }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void clearReleasesMutableValues() {
+
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table} where id in (?{ids}) and data = ?{data}");
+
+        final byte[] data = new byte[16];
+        final List<Long> ids = Arrays.asList(1L, 2L);
+
+        builder.bind("table", "t")
+                .bind("ids", ids)
+                .bind("data", data);
+        assertEquals("select * from t where id in (?, ?) and data = ?", builder.sqlStatement());
+
+        builder.clearBindings();
+
+        final Object[] values = ((SqlStatementBuilderImpl) builder).slotValues();
+        assertNotNull(values);
+        for (Object value: values) {
+            assertTrue(value == null || value instanceof String);
+        }
+
+        builder.bind("ids", Collections.singletonList(3L))
+                .bind("data", null)
+                .bind("table", "t");
+        assertEquals("select * from t where id in (?) and data = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 3L, null }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void rows() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create(
+                "insert into ${table}(name, age) values *{(?{name}, ?{age})} on conflict do nothing returning ?{ret}");
+        builder.bind("table", "users")
+                .bind("ret", 1)
+                .bind("name", "first").bind("age", 1).addRow()
+                .bind("name", "second").bind("age", 2).addRow()
+                .bind("name", "third").bind("age", 3).addRow();
+        assertEquals(
+                "insert into users(name, age) values (?, ?), (?, ?), (?, ?) on conflict do nothing returning ?",
+                builder.sqlStatement()
+        );
+        assertArrayEquals(
+                new Object[] { "first", 1, "second", 2, "third", 3, 1 },
+                builder.sqlBindArguments()
+        );
+
+        // argument after the group is updated at the shifted position
+        builder.bind("ret", 2);
+        assertArrayEquals(
+                new Object[] { "first", 1, "second", 2, "third", 3, 2 },
+                builder.sqlBindArguments()
+        );
+
+        builder.bind("name", "fourth").bind("age", 4).addRow();
+        assertEquals(9, builder.sqlBindArguments().length);
+    }
+
+    @Test
+    public void rowsNotAdded() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(a, b) values *{(?{a}, ?{b})}");
+        builder.bind("a", 1).bind("b", 2);
+        assertEquals("insert into t(a, b) values (?, ?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1, 2 }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void rowsCollectionCannotBeBound() {
+        final SqlStatementBuilder[] builders = {
+                SqlStatementBuilder.create("insert into t(a, b) values *{(?{a}, ?{b})}"),
+                SqlStatementBuilder.createConcurrent("insert into t(a, b) values *{(?{a}, ?{b})}")
+        };
+        for (SqlStatementBuilder builder: builders) {
+            try {
+                builder.bind("a", Arrays.asList(1, 2));
+                //noinspection ConstantConditions
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    @Test
+    public void rowsGroupArgumentsBound() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(a, b) values *{(?{a}, ?{b})}");
+        builder.bind("a", 1).bind("b", 2).addRow().bind("a", 3);
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void rowNotBound() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(a, b) values *{(?{a}, ?{b})}");
+        builder.bind("a", 1);
+        try {
+            builder.addRow();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void rowNoGroup() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(a) values (?{a})");
+        builder.bind("a", 1);
+        try {
+            builder.addRow();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void rowsCleared() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(a) values *{(?{a})}");
+        builder.bind("a", 1).addRow().bind("a", 2).addRow();
+        assertEquals("insert into t(a) values (?), (?)", builder.sqlStatement());
+        builder.clearBindings();
+        builder.bind("a", 3);
+        assertEquals("insert into t(a) values (?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 3 }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void rowsConcurrent() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.createConcurrent("insert into t(a) values *{(?{a})}");
+        builder.bind("a", 1).addRow().bind("a", 2).addRow();
+        assertEquals("insert into t(a) values (?), (?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1, 2 }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void collectionExpanded() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create(
+                "select * from ${table} where id in (?{ids}) and name = ?{name}");
+        builder.bind("table", "users")
+                .bind("ids", Arrays.asList(1, 2, 3))
+                .bind("name", "first");
+        assertEquals("select * from users where id in (?, ?, ?, ?) and name = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1, 2, 3, 3, "first" }, builder.sqlBindArguments());
+
+        // same bucket, same statement
+        builder.bind("ids", new Integer[] { 4, 5, 6, 7 });
+        assertEquals("select * from users where id in (?, ?, ?, ?) and name = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 4, 5, 6, 7, "first" }, builder.sqlBindArguments());
+
+        builder.bind("name", "second");
+        assertArrayEquals(new Object[] { 4, 5, 6, 7, "second" }, builder.sqlBindArguments());
+
+        builder.bind("ids", 8);
+        assertEquals("select * from users where id in (?) and name = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 8, "second" }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void collectionSameInstanceModified() {
+        final List<Integer> ids = new ArrayList<>(Arrays.asList(1, 2));
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from t where id in (?{ids})");
+        builder.bind("ids", ids);
+        assertArrayEquals(new Object[] { 1, 2 }, builder.sqlBindArguments());
+        ids.add(3);
+        builder.bind("ids", ids);
+        assertEquals("select * from t where id in (?, ?, ?, ?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1, 2, 3, 3 }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void primitiveArrayNotExpanded() {
+        final byte[] blob = { 1, 2, 3 };
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("insert into t(data) values (?{data})");
+        builder.bind("data", blob);
+        assertEquals("insert into t(data) values (?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { blob }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void emptyCollection() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from t where id in (?{ids})");
+        builder.bind("ids", Collections.emptyList());
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void collectionExpandedWithRows() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create(
+                "insert into t(a) select a from *{(?{a})} where b in (?{b})");
+        builder.bind("b", Arrays.asList("x", "y")).bind("a", 1).addRow().bind("a", 2).addRow();
+        assertEquals("insert into t(a) select a from (?), (?) where b in (?, ?)", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1, 2, "x", "y" }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void bucket() {
+        final int[] sizes = { 1, 2, 3, 4, 5, 8, 9, 1000 };
+        final int[] buckets = { 1, 2, 4, 4, 8, 8, 16, 1024 };
+        for (int i = 0; i < sizes.length; i++) {
+            assertEquals(buckets[i], SqlStatementBuilderImpl.bucket(sizes[i]));
+        }
+    }
+
+    @Test
+    public void primitives() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create(
+                "select * from t where a = ?{a} and b = ?{b} and c = ?{c} and d = ?{d} limit ${limit} -- ${c} ${d} ${b}");
+        builder.bindLong("a", 1000L)
+                .bindInt("b", 42)
+                .bindDouble("c", 1.5D)
+                .bindBoolean("d", true)
+                .bindLong("limit", 100L);
+        assertEquals("select * from t where a = ? and b = ? and c = ? and d = ? limit 100 -- 1.5 true 42", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1000L, 42, 1.5D, true }, builder.sqlBindArguments());
+
+        // the same value does not re-build a statement
+        final SqlStatement statement = builder.statement();
+        builder.bindLong("a", 1000L);
+        assertSame(statement, builder.statement());
+
+        builder.bindLong("a", 1001L).bindLong("limit", 5L);
+        assertEquals("select * from t where a = ? and b = ? and c = ? and d = ? limit 5 -- 1.5 true 42", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 1001L, 42, 1.5D, true }, builder.sqlBindArguments());
+
+        builder.bind("a", "object");
+        assertArrayEquals(new Object[] { "object", 42, 1.5D, true }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void primitivesFormatter() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select ${%05d a}, ${%.2f b}, ${%d c}%n");
+        builder.bindInt("a", 7).bindDouble("b", 1.234D).bindLong("c", 3L);
+        assertEquals(String.format(Locale.US, "select %05d, %.2f, %d%n", 7, 1.234D, 3L), builder.sqlStatement());
+    }
+
+    @Test
+    public void primitivesConcurrent() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.createConcurrent("select * from t where a = ?{a}");
+        builder.bindLong("a", 1L);
+        assertArrayEquals(new Object[] { 1L }, builder.sqlBindArguments());
+    }
+
+    @Test
+    public void renderToStringBuilder() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table} where id = ?{id}");
+        builder.bind("table", "users").bind("id", 1);
+
+        final StringBuilder out = new StringBuilder("-- ");
+        builder.renderTo(out);
+        assertEquals("-- select * from users where id = ?", out.toString());
+
+        // cached statement
+        builder.sqlStatement();
+        builder.bind("table", "others");
+        out.setLength(0);
+        builder.renderTo(out);
+        assertEquals("select * from others where id = ?", out.toString());
+        assertEquals(out.toString(), builder.sqlStatement());
+    }
+
+    @Test
+    public void renderToNotBound() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table}");
+        try {
+            builder.renderTo(new StringBuilder());
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void renderToAppendable() throws IOException {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table}");
+        builder.bind("table", "users");
+
+        final StringWriter writer = new StringWriter();
+        builder.renderTo(writer);
+        assertEquals("select * from users", writer.toString());
+
+        final CharBuffer buffer = CharBuffer.allocate(32);
+        builder.renderTo(buffer);
+        buffer.flip();
+        assertEquals("select * from users", buffer.toString());
+    }
+
+    @Test
+    public void renderToByteBuffer() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from t where name = '${name}'");
+        builder.bind("name", "\u00e9t\u00e9");
+
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        builder.renderTo(buffer);
+        buffer.flip();
+        assertEquals(builder.sqlStatement(), StandardCharsets.UTF_8.decode(buffer).toString());
+    }
+
+    @Test
+    public void renderToByteBufferOverflow() {
+        final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table}");
+        builder.bind("table", "users");
+        final ByteBuffer buffer = ByteBuffer.allocate(8);
+        try {
+            builder.renderTo(buffer);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (BufferOverflowException e) {
+            assertEquals(0, buffer.position());
+        }
+    }
+}
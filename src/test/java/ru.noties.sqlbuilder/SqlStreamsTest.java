@@ -0,0 +1,220 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SqlStreamsTest {
+
+    private static final String[] INPUTS = {
+            "select * from ${table} where id = ?{id} and name = ?{name}",
+            "{select ${%d number} as n, ${%.2f value} as v}",
+            "select '$' || ? || ${table} || '{' || '}'",
+            "select ?{id}",
+            "${table}",
+            "insert into ${table}(a) values (?{a});\ninsert into ${table}(a) values (?{a});$",
+            "select 1",
+            "select '100%%' || ${table} || '%%%%%n'"
+    };
+
+    @Test
+    public void sameAsBuilder() throws IOException {
+
+        final Map<String, Object> arguments = new HashMap<>();
+        arguments.put("table", "users");
+        arguments.put("id", 42L);
+        arguments.put("name", "first");
+        arguments.put("number", 7);
+        arguments.put("value", 1.2345D);
+        arguments.put("a", "a");
+
+        for (String input: INPUTS) {
+
+            final SqlStatementBuilder builder = SqlStatementBuilder.create(input);
+            for (String name: InputData.create(input).argumentNames()) {
+                builder.bind(name, arguments.get(name));
+            }
+
+            final Object[] expectedArgs = builder.sqlBindArguments();
+
+            // every chunk size, including 1 char
+            for (int chunk: new int[] { 1, 2, 3, 1024 }) {
+                final StringWriter writer = new StringWriter();
+                final List<Object> bindArguments = new ArrayList<>();
+                SqlStreams.render(new ChunkedReader(input, chunk), writer, arguments, null, bindArguments);
+                assertEquals(input, builder.sqlStatement(), writer.toString());
+                assertEquals(
+                        input,
+                        expectedArgs == null ? new ArrayList<>() : Arrays.asList(expectedArgs),
+                        bindArguments
+                );
+            }
+        }
+    }
+
+    @Test
+    public void percentEscapes() throws IOException {
+
+        final Map<String, Object> arguments = Collections.<String, Object>singletonMap("v", "x");
+
+        // builder processes literals with Formatter only if input has format arguments,
+        // streaming always does
+        assertEquals("select '100%%'", SqlStatementBuilder.create("select '100%%'").sqlStatement());
+        assertEquals("select '100%'", render("select '100%%'", arguments));
+
+        // escape at the boundary of literal chunks (parser buffers 8192 chars)
+        final StringBuilder input = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 8191; i++) {
+            input.append('a');
+            expected.append('a');
+        }
+        input.append("%%%% ${v}");
+        expected.append("%% x");
+        assertEquals(expected.toString(), render(input.toString(), arguments));
+        assertEquals(expected.toString(), SqlStatementBuilder.create(input.toString()).bind("v", "x").sqlStatement());
+    }
+
+    private static String render(String input, Map<String, Object> arguments) throws IOException {
+        final StringWriter writer = new StringWriter();
+        SqlStreams.render(new StringReader(input), writer, arguments, null, null);
+        return writer.toString();
+    }
+
+    @Test
+    public void events() throws IOException {
+
+        final StringBuilder out = new StringBuilder();
+
+        SqlStreams.parse(new ChunkedReader("a ${%d b} ?{c} ${d}", 1), new SqlStreams.Handler() {
+            @Override
+            public void literal(@Nonnull char[] chars, int offset, int length) {
+                out.append(chars, offset, length);
+            }
+
+            @Override
+            public void formatArgument(@Nonnull String modifier, @Nonnull String name) {
+                out.append('[').append(modifier).append(':').append(name).append(']');
+            }
+
+            @Override
+            public void bindArgument(@Nonnull String name) {
+                out.append('(').append(name).append(')');
+            }
+        });
+
+        assertEquals("a [%d:b] (c) [%s:d]", out.toString());
+    }
+
+    @Test
+    public void malformed() throws IOException {
+        final String[] inputs = {
+                "select ${}",
+                "select ${a ?{b}}",
+                "select ${a",
+                "insert into t values *{(?{a})}"
+        };
+        for (String input: inputs) {
+            try {
+                SqlStreams.render(new StringReader(input), new StringWriter(), new HashMap<String, Object>(), null, null);
+                //noinspection ConstantConditions
+                assertTrue(input, false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    @Test
+    public void notBound() throws IOException {
+        try {
+            SqlStreams.render(new StringReader("select ${a}"), new StringWriter(), new HashMap<String, Object>(), null, null);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void channels() throws IOException {
+
+        final StringBuilder input = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("insert into ${table}(id, name) values (").append(i).append(", '\u00e9t\u00e9');\n");
+            expected.append("insert into users(id, name) values (").append(i).append(", '\u00e9t\u00e9');\n");
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        SqlStreams.render(
+                Channels.newChannel(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(out),
+                Collections.singletonMap("table", "users"),
+                null,
+                null);
+
+        assertEquals(expected.toString(), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    // returns at most `chunk` chars for each read
+    private static class ChunkedReader extends Reader {
+
+        private final String input;
+        private final int chunk;
+        private int position;
+
+        ChunkedReader(String input, int chunk) {
+            this.input = input;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int read(@Nonnull char[] buffer, int offset, int length) {
+            if (position == input.length()) {
+                return -1;
+            }
+            final int read = Math.min(Math.min(length, chunk), input.length() - position);
+            input.getChars(position, position + read, buffer, offset);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
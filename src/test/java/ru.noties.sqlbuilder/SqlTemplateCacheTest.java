@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateCacheTest {
+
+    @Test
+    public void invalidMaxEntries() {
+        try {
+            SqlTemplateCache.create(0);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void hitAndMiss() {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(4);
+
+        final SqlTemplate first = cache.template("select * from ${table}", null);
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.missCount());
+
+        // null locale is the same as Locale.US
+        final SqlTemplate second = cache.template("select * from ${table}", Locale.US);
+        assertSame(first, second);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void localeIsPartOfKey() {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(4);
+
+        final SqlTemplate us = cache.template("select ${%.2f value}", Locale.US);
+        final SqlTemplate germany = cache.template("select ${%.2f value}", Locale.GERMANY);
+        assertNotSame(us, germany);
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(2);
+
+        final SqlTemplate first = cache.template("select 1", null);
+        final SqlTemplate second = cache.template("select 2", null);
+
+        // access first, so second becomes the eldest
+        assertSame(first, cache.template("select 1", null));
+
+        cache.template("select 3", null);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+
+        assertSame(first, cache.template("select 1", null));
+        assertNotSame(second, cache.template("select 2", null));
+        assertEquals(2, cache.evictionCount());
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int index = 0; index < 1000; index++) {
+                            // half of lookups are misses that evict
+                            final String input = (index & 1) == 0
+                                    ? "select " + (index % 8)
+                                    : "select " + thread + ", " + index;
+                            assertEquals(input, cache.template(input, null).input());
+                        }
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertTrue(cache.size() <= 16);
+        assertEquals(8000L, cache.hitCount() + cache.missCount());
+        assertTrue(cache.evictionCount() > 0);
+    }
+
+    @Test
+    public void malformedInputThrows() {
+        final SqlTemplateCache cache = SqlTemplateCache.create(2);
+        try {
+            cache.template("select * from ${table", null);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void installedIsUsedByBuilder() {
+
+        final SqlTemplateCache cache = SqlTemplateCache.create(2);
+        SqlTemplateCache.install(cache);
+        try {
+
+            for (int i = 0; i < 3; i++) {
+                final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table}")
+                        .bind("table", "table_" + i);
+                assertEquals("select * from table_" + i, builder.sqlStatement());
+            }
+
+            assertEquals(1, cache.missCount());
+            assertEquals(2, cache.hitCount());
+
+            // still lazy, exception is thrown only when statement is requested
+            final SqlStatementBuilder builder = SqlStatementBuilder.create("select * from ${table");
+            try {
+                builder.sqlStatement();
+                //noinspection ConstantConditions
+                assertTrue(false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+
+        } finally {
+            SqlTemplateCache.install(null);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateMetricsTest {
+
+    @Test
+    public void bucket() {
+        assertEquals(0, SqlTemplateMetrics.bucket(-1L));
+        assertEquals(0, SqlTemplateMetrics.bucket(0L));
+        assertEquals(1, SqlTemplateMetrics.bucket(1L));
+        assertEquals(2, SqlTemplateMetrics.bucket(2L));
+        assertEquals(2, SqlTemplateMetrics.bucket(3L));
+        assertEquals(11, SqlTemplateMetrics.bucket(1024L));
+        assertEquals(63, SqlTemplateMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void stripes() {
+        assertEquals(1, SqlTemplateMetricsImpl.stripes(1));
+        assertEquals(4, SqlTemplateMetricsImpl.stripes(3));
+        assertEquals(8, SqlTemplateMetricsImpl.stripes(8));
+        assertEquals(16, SqlTemplateMetricsImpl.stripes(64));
+    }
+
+    @Test
+    public void record() throws InterruptedException {
+
+        final List<SqlTemplateMetrics> created = new ArrayList<>();
+        SqlTemplateMetrics.setListener(new SqlTemplateMetrics.Listener() {
+            @Override
+            public void onCreated(SqlTemplateMetrics metrics) {
+                created.add(metrics);
+            }
+        });
+
+        final SqlTemplateMetricsImpl metrics;
+        try {
+            metrics = SqlTemplateMetricsImpl.create("select 1");
+        } finally {
+            SqlTemplateMetrics.setListener(null);
+        }
+
+        assertEquals(1, created.size());
+        assertSame(metrics, created.get(0));
+        assertEquals("select 1", metrics.input());
+
+        // from multiple threads, so different stripes are used
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++) {
+                        metrics.increment(SqlTemplateMetrics.Counter.BINDS);
+                        metrics.add(SqlTemplateMetrics.Counter.STATEMENT_LENGTH, 2L);
+                        metrics.record(SqlTemplateMetrics.Timer.RENDER, 3L);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        assertEquals(4000L, metrics.count(SqlTemplateMetrics.Counter.BINDS));
+        assertEquals(8000L, metrics.count(SqlTemplateMetrics.Counter.STATEMENT_LENGTH));
+        assertEquals(0L, metrics.count(SqlTemplateMetrics.Counter.STATEMENTS));
+        assertEquals(4000L, metrics.timerCount(SqlTemplateMetrics.Timer.RENDER));
+        assertEquals(12000L, metrics.timerTotalNanos(SqlTemplateMetrics.Timer.RENDER));
+        assertEquals(0L, metrics.timerCount(SqlTemplateMetrics.Timer.PARSE));
+
+        final long[] buckets = metrics.timerBuckets(SqlTemplateMetrics.Timer.RENDER);
+        assertEquals(SqlTemplateMetrics.BUCKETS, buckets.length);
+        assertEquals(4000L, buckets[2]);
+    }
+
+    @Test
+    public void slotCounts() {
+
+        final SqlTemplateMetricsImpl metrics = SqlTemplateMetricsImpl.create("select");
+        assertEquals(-1, metrics.slotCount());
+        assertEquals(-1, metrics.formatArgumentCount());
+        assertEquals(-1, metrics.bindArgumentCount());
+
+        metrics.parsed(InputData.create("select ${column} from ${table} where id = ?{id} or parent = ?{id}"));
+        assertEquals(3, metrics.slotCount());
+        assertEquals(2, metrics.formatArgumentCount());
+        assertEquals(2, metrics.bindArgumentCount());
+    }
+
+    @Test
+    public void builderCreatedAdHocHasNoMetrics() {
+
+        final SqlStatementBuilderImpl builder = (SqlStatementBuilderImpl) SqlStatementBuilder.create("select * from ${table}");
+        builder.bind("table", "users").sqlStatement();
+        assertNull(builder.template().metrics());
+    }
+
+    @Test
+    public void template() {
+
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id}");
+        template.newBuilder().bind("table", "users").bind("id", 1).sqlStatement();
+
+        if (!SqlTemplateMetrics.isEnabled()) {
+            assertNull(template.metrics());
+            return;
+        }
+
+        // `-Dru.noties.sqlbuilder.metrics=true`
+        final SqlTemplateMetrics metrics = template.metrics();
+        assertNotNull(metrics);
+        assertEquals(2L, metrics.count(SqlTemplateMetrics.Counter.BINDS));
+        assertEquals(1L, metrics.count(SqlTemplateMetrics.Counter.STATEMENTS));
+        assertEquals("select * from users where id = ?".length(), metrics.count(SqlTemplateMetrics.Counter.STATEMENT_LENGTH));
+        assertEquals(1L, metrics.timerCount(SqlTemplateMetrics.Timer.PARSE));
+        assertEquals(1L, metrics.timerCount(SqlTemplateMetrics.Timer.RENDER));
+        assertEquals(1L, metrics.timerCount(SqlTemplateMetrics.Timer.BIND_ARGUMENTS));
+        assertEquals(2, metrics.slotCount());
+        assertEquals(1, metrics.formatArgumentCount());
+        assertEquals(1, metrics.bindArgumentCount());
+    }
+}
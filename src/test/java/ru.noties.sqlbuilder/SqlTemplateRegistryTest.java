@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void build() throws IOException {
+
+        final Path path = folder.newFile("users.sql").toPath();
+        Files.write(path, ("" +
+                "-- name: findUser\n" +
+                "select * from users where id = ?{id}\n").getBytes(StandardCharsets.UTF_8));
+
+        final SqlTemplateRegistry registry = SqlTemplateRegistry.builder()
+                .locale(Locale.GERMANY)
+                .add("count", "select count(*) from ${table}")
+                .addAll(SqlTemplateRepository.load(path))
+                .build();
+
+        assertEquals(2, registry.size());
+        assertEquals(Arrays.asList("count", "findUser"), new ArrayList<>(registry.names()));
+        assertTrue(registry.contains("findUser"));
+        assertFalse(registry.contains("deleteUser"));
+
+        assertEquals(Locale.GERMANY, registry.template("count").locale());
+        assertEquals(Locale.US, registry.template("findUser").locale());
+        assertSame(registry.template("count"), registry.template("count"));
+
+        assertEquals(
+                "select * from users where id = ?",
+                registry.newBuilder("findUser").bind("id", 1L).sqlStatement());
+
+        try {
+            registry.names().add("other");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (UnsupportedOperationException e) {
+            assertTrue(true);
+        }
+
+        try {
+            registry.template("deleteUser");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void buildMany() {
+
+        // more than a single task can compile
+        final SqlTemplateRegistry.Builder builder = SqlTemplateRegistry.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.add("t" + i, "select * from t" + i + " where id = ?{id}");
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final SqlTemplateRegistry registry = builder.pool(pool).build();
+            assertEquals(100, registry.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(
+                        "select * from t" + i + " where id = ?",
+                        registry.newBuilder("t" + i).bind("id", i).sqlStatement());
+            }
+            // provided pool is not shut down
+            assertFalse(pool.isShutdown());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void combinedErrors() {
+
+        final SqlTemplateRegistry.Builder builder = SqlTemplateRegistry.builder()
+                .add("valid", "select 1")
+                .add("first", "select * from ${table")
+                .add("second", "select * from users where id = ?{id");
+        for (int i = 0; i < 40; i++) {
+            builder.add("v" + i, "select " + i);
+        }
+
+        try {
+            builder.build();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            final String message = e.getMessage();
+            assertTrue(message, message.contains("`first`"));
+            assertTrue(message, message.contains("`second`"));
+            assertFalse(message, message.contains("`valid`"));
+            assertEquals(2, e.getSuppressed().length);
+        }
+    }
+
+    @Test
+    public void duplicateName() {
+        final SqlTemplateRegistry.Builder builder = SqlTemplateRegistry.builder()
+                .add("name", "select 1");
+        try {
+            builder.add("name", "select 2");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void empty() {
+        final SqlTemplateRegistry registry = SqlTemplateRegistry.builder().build();
+        assertEquals(0, registry.size());
+        assertTrue(registry.names().isEmpty());
+    }
+}
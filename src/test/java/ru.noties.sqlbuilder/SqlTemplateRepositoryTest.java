@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void load() throws IOException {
+
+        final Path users = file("users.sql", "" +
+                "-- users queries\n" +
+                "-- name: findUser\n" +
+                "select * from ${table}\n" +
+                "where id = ?{id}\n" +
+                "\n" +
+                "--name:deleteUser\r\n" +
+                "delete from users where name = '\u00e9t\u00e9' and id = ?{id};\r\n");
+
+        final Path other = file("other.sql", "" +
+                "  --   name:   count   \n" +
+                "select count(*) from users");
+
+        final SqlTemplateRepository repository = SqlTemplateRepository.load(users, other);
+
+        assertEquals(3, repository.size());
+        assertEquals(Arrays.asList("findUser", "deleteUser", "count"), new ArrayList<>(repository.names()));
+        assertTrue(repository.contains("count"));
+        assertFalse(repository.contains("users"));
+
+        final SqlTemplate findUser = repository.template("findUser");
+        assertEquals("select * from ${table}\nwhere id = ?{id}", findUser.input());
+        assertSame(findUser, repository.template("findUser"));
+        assertEquals(Locale.US, findUser.locale());
+
+        assertEquals(
+                "delete from users where name = '\u00e9t\u00e9' and id = ?;",
+                repository.newBuilder("deleteUser").bind("id", 1).sqlStatement()
+        );
+        assertEquals("select count(*) from users", repository.template("count").input());
+    }
+
+    @Test
+    public void unknownName() throws IOException {
+        final SqlTemplateRepository repository = SqlTemplateRepository.load(file("a.sql", "-- name: a\nselect 1"));
+        try {
+            repository.template("b");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void malformedIsLazy() throws IOException {
+        final SqlTemplateRepository repository = SqlTemplateRepository.load(
+                file("a.sql", "-- name: good\nselect 1\n-- name: bad\nselect ${}"));
+        assertEquals("select 1", repository.template("good").input());
+        try {
+            repository.template("bad");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void invalidFiles() throws IOException {
+        final String[] contents = {
+                "-- name: a\nselect 1\n-- name: a\nselect 2",
+                "-- name: a\n\n  \n-- name: b\nselect 2",
+                "-- name: \nselect 1"
+        };
+        for (String content: contents) {
+            try {
+                SqlTemplateRepository.load(file("invalid.sql", content));
+                //noinspection ConstantConditions
+                assertTrue(content, false);
+            } catch (IllegalStateException e) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    private Path file(String name, String content) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2017 Dimitry Ivanov (mail@dimitryivanov.ru)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ru.noties.sqlbuilder;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class SqlTemplateTest {
+
+    @Test
+    public void malformedInputThrowsOnCreate() {
+        try {
+            SqlTemplate.create("select * from ${table");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void nullInputThrows() {
+        try {
+            //noinspection ConstantConditions
+            SqlTemplate.create(null);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (NullPointerException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void defaultLocale() {
+        assertEquals(Locale.US, SqlTemplate.create("select 1").locale());
+        assertEquals(Locale.FRANCE, SqlTemplate.create("select 1", Locale.FRANCE).locale());
+    }
+
+    @Test
+    public void inputDataIsParsedOnce() {
+        final SqlTemplateImpl template = (SqlTemplateImpl) SqlTemplate.create("select * from ${table} where id = ?{id}");
+        final InputData data = template.inputData();
+        assertSame(data, template.inputData());
+
+        final SqlStatementBuilder builder = template.newBuilder();
+        for (int i = 0; i < 3; i++) {
+            builder.clearBindings();
+            builder.bind("table", "table_" + i);
+            builder.bind("id", i);
+            assertEquals("select * from table_" + i + " where id = ?", builder.sqlStatement());
+            assertArrayEquals(new Object[] { i }, builder.sqlBindArguments());
+            assertSame(data, template.inputData());
+        }
+    }
+
+    @Test
+    public void buildersAreIndependent() {
+
+        final SqlTemplate template = SqlTemplate.create("select * from ${table}");
+
+        final SqlStatementBuilder first = template.newBuilder();
+        final SqlStatementBuilder second = template.newBuilder();
+        assertNotSame(first, second);
+
+        first.bind("table", "first");
+        second.bind("table", "second");
+
+        assertEquals("select * from first", first.sqlStatement());
+        assertEquals("select * from second", second.sqlStatement());
+    }
+
+    @Test
+    public void localeIsUsedForFormatting() {
+        final SqlStatementBuilder builder = SqlTemplate.create("select ${%.2f value}", Locale.GERMANY)
+                .newBuilder()
+                .bind("value", 1.5D);
+        assertEquals("select 1,50", builder.sqlStatement());
+    }
+
+    @Test
+    public void slots() {
+
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id} and ${table}.name = ?{name}");
+        assertEquals(3, template.slotCount());
+        assertEquals(0, template.slot("table"));
+        assertEquals(1, template.slot("id"));
+        assertEquals(2, template.slot("name"));
+        assertEquals("table", template.slotName(0));
+        assertEquals("id", template.slotName(1));
+        assertEquals("name", template.slotName(2));
+
+        try {
+            template.slot("not_present");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+
+        try {
+            template.slotName(3);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void bindBySlot() {
+
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id} or parent_id = ?{id}");
+        final int table = template.slot("table");
+        final int id = template.slot("id");
+
+        final SqlStatementBuilder builder = template.newBuilder()
+                .bind(table, "my_table")
+                .bind(id, 33L);
+        assertEquals("select * from my_table where id = ? or parent_id = ?", builder.sqlStatement());
+        assertArrayEquals(new Object[] { 33L, 33L }, builder.sqlBindArguments());
+
+        // slots and names can be mixed
+        builder.bind("id", 34L);
+        assertArrayEquals(new Object[] { 34L, 34L }, builder.sqlBindArguments());
+
+        try {
+            builder.bind(2, "invalid");
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void bindBySlotNotAllBound() {
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id}");
+        final SqlStatementBuilder builder = template.newBuilder()
+                .bind(template.slot("id"), 1L);
+        try {
+            builder.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void statistics() {
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id} limit ${%d limit}");
+        assertEquals("select * from  where id =  limit ".length(), template.literalLength());
+        assertEquals(0, template.maxWidth(template.slot("table")));
+        assertEquals(template.literalLength() + 1 + 16 * 2, template.estimatedLength());
+
+        final String statement = template.newBuilder()
+                .bind("table", "users")
+                .bind("id", 1)
+                .bind("limit", 100)
+                .sqlStatement();
+
+        assertEquals(5, template.maxWidth(template.slot("table")));
+        assertEquals(3, template.maxWidth(template.slot("limit")));
+        assertEquals(0, template.maxWidth(template.slot("id")));
+        assertEquals(statement.length(), template.estimatedLength());
+
+        // widths only grow
+        template.newBuilder().bind("table", "t").bind("id", 1).bind("limit", 1).sqlStatement();
+        assertEquals(5, template.maxWidth(template.slot("table")));
+        assertEquals(statement.length(), template.estimatedLength());
+    }
+
+    @Test
+    public void statisticsFormatterRequired() {
+        final SqlTemplate template = SqlTemplate.create("select '%%' || ${value}");
+        final String statement = template.newBuilder().bind("value", "some long value").sqlStatement();
+        assertEquals(statement.length(), template.estimatedLength());
+    }
+
+    @Test
+    public void statisticsIgnoreOutliers() {
+
+        final SqlTemplate template = SqlTemplate.create("select * from ${table}");
+        final String statement = template.newBuilder().bind("table", "users").sqlStatement();
+
+        final StringBuilder wide = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            wide.append('t');
+        }
+        template.newBuilder().bind("table", wide.toString()).sqlStatement();
+
+        assertEquals(5, template.maxWidth(template.slot("table")));
+        assertEquals(statement.length(), template.estimatedLength());
+
+        // length of rendered rows is not recorded as width of arguments
+        final SqlTemplate group = SqlTemplate.create("insert into ${table}(a) values *{(?{a})} -- 100%%");
+        final SqlStatementBuilder builder = group.newBuilder().bind("table", "users");
+        for (int i = 0; i < 1000; i++) {
+            builder.bind("a", i).addRow();
+        }
+        assertTrue(builder.sqlStatement().length() > 5000);
+        assertEquals(
+                group.newBuilder().bind("table", "users").bind("a", 1).sqlStatement().length(),
+                group.estimatedLength());
+    }
+
+    @Test
+    public void acquireRelease() {
+        final SqlTemplate template = SqlTemplate.create("select * from ${table} where id = ?{id}");
+
+        final SqlStatementBuilder first = template.acquire();
+        first.bind("table", "users").bind("id", 1);
+        assertEquals("select * from users where id = ?", first.sqlStatement());
+        template.release(first);
+
+        // bindings are cleared
+        final SqlStatementBuilder second = template.acquire();
+        assertSame(first, second);
+        try {
+            second.sqlStatement();
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        // pool is empty
+        assertNotSame(second, template.acquire());
+    }
+
+    @Test
+    public void releasedBuilderDoesNotReferenceValues() throws Exception {
+
+        final SqlTemplate template = SqlTemplate.create("insert into ${table}(a, b) values *{(?{a}, ?{b})}");
+
+        // strings are kept by `clearBindings`, but not by `release`
+        //noinspection RedundantStringConstructorCall
+        final Object table = new String("users");
+        final Object a = new byte[8];
+        final Object b = new Object();
+
+        final SqlStatementBuilder builder = template.acquire();
+        builder.bind("table", table).bind("a", a).bind("b", b).addRow();
+        assertEquals("insert into users(a, b) values (?, ?)", builder.sqlStatement());
+        assertTrue(references(builder, a));
+
+        template.release(builder);
+
+        for (Object value: new Object[] { table, a, b }) {
+            assertFalse(references(builder, value));
+        }
+    }
+
+    // checks fields of a builder, elements of its arrays, lists and statement
+    private static boolean references(@SuppressWarnings("SameParameterValue") Object builder, Object value) throws Exception {
+        for (Field field: SqlStatementBuilderImpl.class.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            field.setAccessible(true);
+            if (contains(field.get(builder), value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(Object holder, Object value) {
+        if (holder == value) {
+            return true;
+        }
+        if (holder instanceof Object[]) {
+            for (Object element: (Object[]) holder) {
+                if (contains(element, value)) {
+                    return true;
+                }
+            }
+        } else if (holder instanceof Iterable) {
+            for (Object element: (Iterable<?>) holder) {
+                if (contains(element, value)) {
+                    return true;
+                }
+            }
+        } else if (holder instanceof SqlStatement) {
+            return contains(((SqlStatement) holder).sqlBindArguments(), value);
+        }
+        return false;
+    }
+
+    @Test
+    public void releaseTwice() {
+        final SqlTemplate template = SqlTemplate.create("select * from ${table}");
+        final SqlStatementBuilder builder = template.acquire();
+        template.release(builder);
+        try {
+            template.release(builder);
+            //noinspection ConstantConditions
+            assertTrue(false);
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void releaseForeign() {
+        final SqlTemplate template = SqlTemplate.create("select * from ${table}");
+        final SqlStatementBuilder[] builders = {
+                SqlTemplate.create("select * from ${table}").acquire(),
+                template.newConcurrentBuilder()
+        };
+        for (SqlStatementBuilder builder: builders) {
+            try {
+                template.release(builder);
+                //noinspection ConstantConditions
+                assertTrue(false);
+            } catch (IllegalArgumentException e) {
+                assertTrue(true);
+            }
+        }
+    }
+
+    @Test
+    public void poolSize() {
+        assertEquals(2, SqlTemplateImpl.poolSize(1));
+        assertEquals(8, SqlTemplateImpl.poolSize(4));
+        assertEquals(16, SqlTemplateImpl.poolSize(6));
+        assertEquals(32, SqlTemplateImpl.poolSize(64));
+    }
+}